@@ -0,0 +1,77 @@
+package support;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of one frame, like the playing thread does for every frame, and of a whole file without a sound card.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+    @Param({FixtureGenerator.CBR, FixtureGenerator.VBR})
+    public String fixture;
+
+    private Song song;
+    private Bitstream bitstream;
+    private Decoder decoder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, BitstreamException {
+        song = Fixtures.song(fixture);
+        reopen();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws BitstreamException {
+        bitstream.close();
+    }
+
+    @Benchmark
+    public SampleBuffer decodeFrame() throws IOException, JavaLayerException {
+        Header h = bitstream.readFrame();
+        if (h == null) { // End of the file, start again.
+            reopen();
+            h = bitstream.readFrame();
+        }
+        SampleBuffer output = (SampleBuffer) decoder.decodeFrame(h, bitstream);
+        bitstream.closeFrame();
+        return output;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public OfflineDecoder.Report decodeFile() throws JavaLayerException {
+        return OfflineDecoder.decode(song.getFilePath(), new CaptureAudioDevice(null));
+    }
+
+    private void reopen() throws IOException, BitstreamException {
+        if (bitstream != null) bitstream.close();
+        bitstream = new Bitstream(song.getInputStream());
+        decoder = new Decoder();
+    }
+}
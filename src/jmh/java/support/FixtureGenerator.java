@@ -0,0 +1,109 @@
+package support;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Writes the MP3 files used by the benchmarks. The files are checked in, this is only needed to change them.
+ * The frames are MPEG 1 Layer III, 44100 Hz, stereo, with valid side info and pseudo-random main data from a fixed
+ * seed, so the decoder does the full Huffman, dequantization and synthesis work of a real song and the output is
+ * the same on every run.
+ * The headers, Xing frame and ID3v2 tag are written by {@link Mp3Fixtures}, shared with the tests.
+ * Usage: FixtureGenerator [DIR], by default src/jmh/resources/fixtures.
+ */
+public final class FixtureGenerator {
+    static final String CBR = "cbr-128k.mp3";
+    static final String VBR = "vbr.mp3";
+    static final int FRAMES = 1000;
+
+    private static final int[] TABLES = {1, 2, 3, 5, 6, 7, 8, 9, 10, 11, 12, 13, 15, 16, 17, 24}; // Huffman tables.
+
+    private FixtureGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Path.of(args.length > 0 ? args[0] : "src/jmh/resources/fixtures");
+        Files.createDirectories(dir);
+        write(dir.resolve(CBR), false);
+        write(dir.resolve(VBR), true);
+    }
+
+    private static void write(Path file, boolean vbr) throws IOException {
+        Random random = new Random(vbr ? 2 : 1);
+        byte[][] frames = new byte[FRAMES][];
+        int audioSize = 0;
+        for (int i = 0; i < FRAMES; i++) {
+            int bitrateIndex = vbr ? 1 + random.nextInt(Mp3Fixtures.BITRATES.length - 1) : Mp3Fixtures.CBR_BITRATE;
+            frames[i] = frame(bitrateIndex, random);
+            audioSize += frames[i].length;
+        }
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            out.write(Mp3Fixtures.id3v2Tag(110));
+            if (vbr) {
+                out.write(Mp3Fixtures.xingFrame(false, FRAMES, audioSize));
+            }
+            for (byte[] frame : frames) {
+                out.write(frame);
+            }
+        }
+    }
+
+    /**
+     * @param bitrateIndex Bitrate index of the header.
+     * @param random       Source of the side info and main data.
+     */
+    private static byte[] frame(int bitrateIndex, Random random) {
+        byte[] frame = Mp3Fixtures.frame(bitrateIndex, false, false); // No padding, no CRC.
+        random.nextBytes(frame);
+        ByteBuffer.wrap(frame).putInt(Mp3Fixtures.header(bitrateIndex, false, false));
+
+        BitWriter side = new BitWriter(frame, 4);
+        side.write(0, 9); // main_data_begin, no bit reservoir.
+        side.write(0, 3); // private_bits
+        side.write(0, 8); // scfsi
+        int granuleBits = Math.min(4095, (frame.length - 4 - Mp3Fixtures.SIDE_INFO_SIZE) * 8 / 4);
+        for (int granule = 0; granule < 4; granule++) { // 2 granules of 2 channels.
+            side.write(granuleBits, 12); // part2_3_length
+            side.write(random.nextInt(289), 9); // big_values
+            side.write(150 + random.nextInt(30), 8); // global_gain
+            side.write(random.nextInt(16), 4); // scalefac_compress
+            side.write(0, 1); // window_switching_flag, long blocks.
+            for (int region = 0; region < 3; region++) {
+                side.write(TABLES[random.nextInt(TABLES.length)], 5); // table_select
+            }
+            side.write(random.nextInt(16), 4); // region0_count
+            side.write(random.nextInt(8), 3); // region1_count
+            side.write(0, 1); // preflag
+            side.write(0, 1); // scalefac_scale
+            side.write(random.nextInt(2), 1); // count1table_select
+        }
+        return frame;
+    }
+
+    private static final class BitWriter {
+        private final byte[] bytes;
+        private int position; // In bits.
+
+        private BitWriter(byte[] bytes, int offset) {
+            this.bytes = bytes;
+            this.position = offset * 8;
+        }
+
+        private void write(int value, int bits) {
+            for (int i = bits - 1; i >= 0; i--, position++) {
+                int mask = 0x80 >>> (position & 7);
+                if (((value >>> i) & 1) != 0) {
+                    bytes[position >>> 3] |= (byte) mask;
+                } else {
+                    bytes[position >>> 3] &= (byte) ~mask;
+                }
+            }
+        }
+    }
+}
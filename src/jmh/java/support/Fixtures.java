@@ -0,0 +1,61 @@
+package support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * Access to the MP3 files of the benchmarks, see {@link FixtureGenerator}.
+ */
+final class Fixtures {
+    private Fixtures() {
+    }
+
+    /**
+     * The files are in the classpath, they are copied to a temporary file so they can be mapped like a song.
+     *
+     * @param name Name of the fixture.
+     * @return path of a copy of the fixture.
+     */
+    static String path(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (in == null) throw new IllegalArgumentException("No fixture " + name);
+            Path file = Files.createTempFile("fixture-", "-" + name);
+            file.toFile().deleteOnExit();
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            return file.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param name Name of the fixture.
+     * @return a song of the fixture.
+     */
+    static Song song(String name) {
+        String filePath = path(name);
+        try {
+            FrameIndex index = FrameIndex.build(filePath);
+            float msLength = index.getNumFrames() * index.getMsPerFrame();
+            return new Song(UUID.randomUUID().toString(), name, "Fixtures", "Benchmark", "2022",
+                    SecondsToString.lengthToString((int) msLength / 1000), msLength, filePath,
+                    (int) Files.size(Path.of(filePath)), index.getNumFrames(), index.getMsPerFrame());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param i Number of the song.
+     * @return a song that is only used in the queue, its file doesn't exist.
+     */
+    static Song fakeSong(int i) {
+        return new Song(UUID.randomUUID().toString(), "Title " + i, "Album " + (i / 12), "Artist " + (i / 120),
+                String.valueOf(1960 + i % 60), "00:03:30", 210_000, "/music/" + i + ".mp3", 3_360_000, 8038, 26.12f);
+    }
+}
@@ -0,0 +1,83 @@
+package support;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and loading the queue as a {@link PlaylistFile} and as an M3U8 playlist.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaylistBenchmark {
+    @Param({"1000", "100000"})
+    public int size;
+
+    private List<Song> songs;
+    private Path folder;
+    private Path playlistFile;
+    private Path m3uFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        songs = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            songs.add(Fixtures.fakeSong(i));
+        }
+        folder = Files.createTempDirectory("playlist-benchmark");
+        playlistFile = folder.resolve("queue" + PlaylistFile.EXTENSION);
+        m3uFile = folder.resolve("queue.m3u8");
+        PlaylistFile.save(songs, playlistFile);
+        M3uPlaylist.write(songs, m3uFile);
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        PlaylistFile.save(songs, playlistFile);
+    }
+
+    @Benchmark
+    public List<Song> load() throws IOException {
+        return PlaylistFile.load(playlistFile);
+    }
+
+    @Benchmark
+    public void exportM3u() throws IOException {
+        M3uPlaylist.write(songs, m3uFile);
+    }
+
+    @Benchmark
+    public int importM3u() throws IOException {
+        int[] entries = {0};
+        M3uPlaylist.read(m3uFile, file -> entries[0]++);
+        return entries[0];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(playlistFile);
+        Files.deleteIfExists(m3uFile);
+        Files.deleteIfExists(folder);
+    }
+}
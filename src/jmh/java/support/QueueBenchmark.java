@@ -0,0 +1,69 @@
+package support;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Changes to the queue done by the "Add song", "Remove" and "Shuffle" buttons. Adding and removing are measured in
+ * pairs that leave the queue as they found it, so every invocation sees a queue of the same size. Shuffling does the
+ * same work whether the queue is already shuffled or not.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private SongQueue queue;
+    private Song extraSong;
+    private final Random random = new Random(42);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        queue = new SongQueue(new SongStore());
+        for (int i = 0; i < size; i++) {
+            queue.add(Fixtures.fakeSong(i));
+        }
+        extraSong = Fixtures.fakeSong(size);
+    }
+
+    @Benchmark
+    public void addAndRemove() {
+        queue.add(extraSong);
+        queue.remove(size);
+    }
+
+    @Benchmark
+    public void removeAndAdd() {
+        Song removed = queue.get(size / 2);
+        queue.remove(size / 2); // Moves half of the queue.
+        queue.add(removed);
+    }
+
+    @Benchmark
+    public Song get() {
+        return queue.get(random.nextInt(size)); // Usually read from the store again, nothing else holds the songs.
+    }
+
+    @Benchmark
+    public void shuffle() {
+        queue.shuffle(queue.get(0), random);
+    }
+}
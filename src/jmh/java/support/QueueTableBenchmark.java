@@ -0,0 +1,80 @@
+package support;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.JTable;
+import javax.swing.table.TableRowSorter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Updates of the queue table done by PlayerWindow after changes to the queue: a song added or removed, and a new
+ * order after a shuffle, a search typed in the search field and a click on a column to sort it. The sorter filters
+ * and sorts every row from the model order on each change, so setting the same filter again or toggling the sort
+ * order costs the same as the first time and nothing has to be reset between invocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class QueueTableBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private int[] records;
+    private Song extraSong;
+    private QueueTableModel queueModel;
+    private JTable queueList;
+    private TableRowSorter<QueueTableModel> queueSorter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SongStore store = new SongStore();
+        SongQueue queue = new SongQueue(store);
+        for (int i = 0; i < size; i++) {
+            queue.add(Fixtures.fakeSong(i));
+        }
+        records = queue.getRecords();
+        extraSong = Fixtures.fakeSong(size);
+        queueModel = new QueueTableModel(store, records);
+        queueList = new JTable();
+        queueSorter = PlayerWindow.fillQueueTable(queueList, queueModel);
+    }
+
+    @Benchmark
+    public JTable addAndRemove() {
+        queueModel.add(extraSong);
+        queueModel.remove(size);
+        return queueList;
+    }
+
+    @Benchmark
+    public JTable setQueueList() {
+        queueModel.setRecords(records);
+        return queueList;
+    }
+
+    @Benchmark
+    public int search() {
+        queueSorter.setRowFilter(queueModel.filter("album 4"));
+        return queueSorter.getViewRowCount();
+    }
+
+    @Benchmark
+    public int sortByArtist() {
+        queueSorter.toggleSortOrder(2); // Ascending and descending in turn.
+        return queueSorter.convertRowIndexToModel(0);
+    }
+}
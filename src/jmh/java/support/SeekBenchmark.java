@@ -0,0 +1,70 @@
+package support;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.Header;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Seeking to a frame by skipping every frame before it, like Player.skipToFrame, and through the {@link FrameIndex}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SeekBenchmark {
+    @Param({FixtureGenerator.CBR, FixtureGenerator.VBR})
+    public String fixture;
+
+    @Param({"10", "100", "500", "990"})
+    public int depth;
+
+    private Song song;
+    private FrameIndex frameIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        song = Fixtures.song(fixture);
+        frameIndex = FrameIndex.build(song.getFilePath());
+    }
+
+    @Benchmark
+    public Header skipToFrame() throws IOException, BitstreamException {
+        Bitstream bitstream = new Bitstream(song.getInputStream());
+        try {
+            for (int frame = 0; frame < depth; frame++) {
+                if (bitstream.readFrame() == null) break;
+                bitstream.closeFrame();
+            }
+            return bitstream.readFrame();
+        } finally {
+            bitstream.close();
+        }
+    }
+
+    @Benchmark
+    public Header indexedSeek() throws IOException, BitstreamException {
+        Bitstream bitstream = new Bitstream(song.getInputStream(frameIndex.getOffset(depth)));
+        try {
+            return bitstream.readFrame();
+        } finally {
+            bitstream.close();
+        }
+    }
+}
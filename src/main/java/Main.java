@@ -1,5 +1,75 @@
+import javazoom.jl.decoder.JavaLayerException;
+import support.CaptureAudioDevice;
+import support.OfflineDecoder;
+import support.QueueExporter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws JavaLayerException {
+        if (args.length > 0 && args[0].equals("--decode")) {
+            decode(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--export")) {
+            export(args);
+            return;
+        }
         new Player();
     }
+
+    /**
+     * Headless mode, decodes the files without a sound card and prints the speed of each one.
+     * Usage: --decode [--wav DIR] FILE...
+     * With --wav, the samples of each file are saved to DIR/NAME.wav, otherwise they are discarded.
+     */
+    private static void decode(String[] args) throws JavaLayerException {
+        Path wavDir = null; // Directory of the WAV files.
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--wav") && i + 1 < args.length) {
+                wavDir = Path.of(args[++i]);
+                continue;
+            }
+            Path file = Path.of(args[i]);
+            Path wavFile = wavDir != null ? wavDir.resolve(file.getFileName().toString().replaceFirst("\\.[^.]*$", "") + ".wav") : null;
+            System.out.println(OfflineDecoder.decode(args[i], new CaptureAudioDevice(wavFile)));
+        }
+    }
+
+    /**
+     * Headless mode, decodes the files in parallel and prints the speed of each one and of the whole export.
+     * Usage: --export [--wav DIR] [--threads N] [--queue] FILE...
+     * A FILE can also be a .playlist or M3U file, and --queue exports the queue saved by the player, in its order.
+     * By default, one file is decoded per core.
+     */
+    private static void export(String[] args) throws JavaLayerException {
+        Path wavDir = null; // Directory of the WAV files.
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<String> paths = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--wav") && i + 1 < args.length) {
+                wavDir = Path.of(args[++i]);
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--queue")) {
+                paths.add(Player.QUEUE_FILE);
+            } else {
+                paths.add(args[i]);
+            }
+        }
+        List<String> files;
+        try {
+            files = QueueExporter.filesOf(paths);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        QueueExporter.Report report = QueueExporter.export(files, wavDir, threads);
+        for (OfflineDecoder.Report file : report.getFiles()) {
+            System.out.println(file);
+        }
+        System.out.println(report);
+    }
 }
@@ -1,24 +1,38 @@
 import com.mpatric.mp3agic.InvalidDataException;
 import com.mpatric.mp3agic.UnsupportedTagException;
 import javazoom.jl.decoder.*;
-import javazoom.jl.player.AudioDevice;
-import javazoom.jl.player.FactoryRegistry;
+import support.CommandQueue;
+import support.DecodePipeline;
+import support.FolderImporter;
+import support.FrameIndex;
+import support.M3uPlaylist;
+import support.PlaybackMetrics;
+import support.PlaybackState;
+import support.PlayerEvents;
 import support.PlayerWindow;
+import support.PlaylistFile;
+import support.SessionAudioDevice;
 import support.Song;
+import support.SongLoader;
+import support.SongQueue;
+import support.SongStore;
 
 import javax.swing.event.MouseInputAdapter;
 import java.awt.*;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class Player {
+    private static final Logger LOG = Logger.getLogger(Player.class.getName());
 
     /**
      * The MPEG audio bitstream.
@@ -29,36 +43,70 @@ public class Player {
      */
     private Decoder decoder;
     /**
-     * The AudioDevice where audio samples are written to.
+     * The AudioDevice where audio samples are written to. The same device is used for the whole session.
      */
-    private AudioDevice device;
+    private final SessionAudioDevice device = new SessionAudioDevice();
+    /**
+     * Decodes the bitstream ahead of playback.
+     */
+    private DecodePipeline pipeline;
+    /**
+     * Pipeline already decoding the first frames of the next song. Only used by the playing thread.
+     */
+    private DecodePipeline nextPipeline;
+    private Song nextPipelineSong; // The song decoded by nextPipeline.
+    private volatile boolean nextPipelineStale = false; // Set when the queue changes, so the next song may be another.
+    private static final int PREFETCH_FRAMES = 200; // How many frames before the end of the song the next one is opened.
+    /**
+     * Maximum number of decoded frames written to the device at once. Can be changed with -Dplayer.writeBatch=N, more
+     * frames mean fewer writes and wake-ups but up to N frames more between a click and the audio changing.
+     */
+    private static final int WRITE_BATCH = Math.max(1, Integer.getInteger("player.writeBatch", 1));
+    private short[] batchSamples = new short[0]; // Reused to write many frames at once. Only used by the playing thread.
     private int currentFrame = 0; // Current frame of the music.
+    private int failedInARow = 0; // Songs skipped in a row because they could not be decoded. Guarded by thread.
     private final ReentrantLock thread = new ReentrantLock(); // Lock.
+    private final Condition stateChanged = thread.newCondition(); // Signaled when the playing thread should wake up.
+    private volatile PlaybackState state = PlaybackState.STOPPED; // State of the playing thread.
+    private volatile long resumeRequestedAt = 0; // System.nanoTime() of the last resume, 0 after it was measured.
+    private volatile long resumeLatency = -1; // Nanoseconds between the last resume and its first frame written.
+    private final CommandQueue commands = new CommandQueue("player-commands"); // Runs every player action in order.
     private PlayerWindow window; // The player window.
-    private Song currentPlayingSong; // The current playing song in the player.
-    private String[][] musicQueue; // Queue containing all songs in order.
-    private ArrayList<Song> songs = new ArrayList<>(); // Array containing the ID of the songs.
-    private String[][] unshuffledMusicQueue; // Queue containing all songs without the shuffle.
-    private ArrayList<Song> unshuffledSongs = new ArrayList<>(); // Array containing the ID of the songs without the shuffle.
-    private boolean shuffleActivated = false; // Indicates if shuffle is activated.
+    private volatile Song currentPlayingSong; // The current playing song in the player.
+    private final SongStore store = new SongStore(); // Every song added to the queue.
+    private final SongQueue queue = new SongQueue(store); // Songs in the order they play. Guarded by thread.
     private boolean loopActivated = false; // Indicates if loop is activated.
     private final Random random = new Random(); // Random.
-    private boolean newPlay; // A boolean that indicates if a new song is about to play.
-    private boolean dragged = false; // If the mouse drag the scrubber.
-    Thread threadPlaying; // Thread of the playing method.
-    private boolean playerEnabled = false; // Enable the player.
-    private int playPauseButton = 0; // 0 == Play | 1 == Pause
+    private volatile boolean dragged = false; // If the mouse drag the scrubber.
+    private final Thread threadPlaying = new Thread(this::playing, "playback"); // Plays the frames for the whole session.
+    private volatile boolean playerEnabled = false; // Enable the player.
     private static final String WINDOW_TITLE = "Music Player"; // The window title.
+    /**
+     * File where the queue is saved on exit and loaded on start. Can be changed with -Dplayer.queueFile=PATH, an empty
+     * path disables it.
+     */
+    static final String QUEUE_FILE = System.getProperty("player.queueFile",
+            Path.of(System.getProperty("user.home"), ".music-player", "queue" + PlaylistFile.EXTENSION).toString());
 
-    private final ActionListener buttonListenerPlayNow = e -> playNow();
-    private final ActionListener buttonListenerRemove = e -> remove();
+    /*
+     * The listeners only read what they need from the window and submit a command, nothing else runs in the EDT.
+     */
+    private final ActionListener buttonListenerPlayNow = e -> commands.submit(new PlayNowCommand(window.getSelectedSong()));
+    private final ActionListener buttonListenerRemove = e -> {
+        Song selectedSong = window.getSelectedSong();
+        commands.submit(() -> remove(selectedSong));
+    };
     private final ActionListener buttonListenerAddSong = e -> add();
-    private final ActionListener buttonListenerPlayPause = e -> playPause();
-    private final ActionListener buttonListenerStop = e -> stop();
-    private final ActionListener buttonListenerNext = e -> next();
-    private final ActionListener buttonListenerPrevious = e -> previous();
-    private final ActionListener buttonListenerShuffle = e -> shuffle();
-    private final ActionListener buttonListenerLoop = e -> loop();
+    private final ActionListener buttonListenerSavePlaylist = e -> {
+        Path file = window.openSaveChooser();
+        if (file != null) commands.submit(() -> savePlaylist(file));
+    };
+    private final ActionListener buttonListenerPlayPause = e -> commands.submit(new PlayPauseCommand());
+    private final ActionListener buttonListenerStop = e -> commands.submit(this::stop);
+    private final ActionListener buttonListenerNext = e -> commands.submit(new SkipCommand(1));
+    private final ActionListener buttonListenerPrevious = e -> commands.submit(new SkipCommand(-1));
+    private final ActionListener buttonListenerShuffle = e -> commands.submit(this::shuffle);
+    private final ActionListener buttonListenerLoop = e -> commands.submit(this::loop);
     private final MouseInputAdapter scrubberMouseInputAdapter = new MouseInputAdapter() {
         @Override
         public void mouseReleased(MouseEvent e) {scrubberRelease();}
@@ -71,12 +119,16 @@ public class Player {
     };
 
     public Player() {
+        PlaybackMetrics.register();
+        int[] records = queue.getRecords();
         EventQueue.invokeLater(() -> window = new PlayerWindow(
                 WINDOW_TITLE,
-                this.musicQueue,
+                store,
+                records,
                 buttonListenerPlayNow,
                 buttonListenerRemove,
                 buttonListenerAddSong,
+                buttonListenerSavePlaylist,
                 buttonListenerShuffle,
                 buttonListenerPrevious,
                 buttonListenerPlayPause,
@@ -85,175 +137,259 @@ public class Player {
                 buttonListenerLoop,
                 scrubberMouseInputAdapter)
         );
+        threadPlaying.setDaemon(true);
+        threadPlaying.start();
+        if (!QUEUE_FILE.isEmpty()) {
+            commands.submit(() -> openPlaylist(Path.of(QUEUE_FILE)));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> savePlaylist(Path.of(QUEUE_FILE)), "save-queue"));
+        }
     }
 
     /**
-     * Plays the current selected song.
+     * @return nanoseconds between the last resume and the first frame written after it, or -1 if not measured yet.
      */
-    private void playNow(){
-        try {
-            if (threadPlaying != null && threadPlaying.isAlive()) threadPlaying.interrupt(); // Interrupt the playing thread.
-            String selectedSong = window.getSelectedSong();
-            int currentSongIdx = 0; // The index of the current song.
-            newPlay = true; // When a new song is about to play.
-
-            for (int i = 0; i < musicQueue.length; i++){ // Update the mini player with the information of the music.
-                if (selectedSong == musicQueue[i][5]){
-                    window.setPlayingSongInfo(musicQueue[i][0], musicQueue[i][1], musicQueue[i][2]);
-                    currentSongIdx = i;
-                }
-            }
+    public long getResumeLatency() {
+        return resumeLatency;
+    }
+
+    /**
+     * Plays the selected song.
+     *
+     * @param selectedSong Song selected in the queue.
+     */
+    private void playNow(Song selectedSong){
+        int currentSongIdx = queue.indexOf(selectedSong); // The index of the current song.
+        if (currentSongIdx >= 0) {
+            changeSong(currentSongIdx);
+        }
+    }
 
-            currentPlayingSong = songs.get(currentSongIdx); // Define current playing song.
-            playerEnabled = true;
-            playPauseButton = 1;
+    /**
+     * Opens the song at the given index of the queue and plays it from the beginning.
+     *
+     * @param index Index of the song in the queue.
+     */
+    private void changeSong(int index){
+        changeSong(index, "Changed");
+    }
 
-            /*
-            * Enabling the buttons in mini player.
-            */
-            window.setPlayPauseButtonIcon(playPauseButton);
-            window.setEnabledPlayPauseButton(playerEnabled);
-            window.setEnabledStopButton(playerEnabled);
-            window.setEnabledScrubber(playerEnabled);
+    /**
+     * Opens the song at the given index of the queue and plays it from the beginning.
+     *
+     * @param index     Index of the song in the queue.
+     * @param endReason Why the current song ended, see {@link #endTrack(String)}.
+     */
+    private void changeSong(int index, String endReason){
+        try {
+            long start = System.nanoTime();
+            PlaybackState newState = PlaybackState.STOPPED; // Stays stopped if the song can't be opened.
+            beginSongChange();
+            try {
+                endTrack(endReason);
+                Song song = queue.get(index);
+                song.buildFrameIndex(); // Only if it was not built yet.
+                refineLength(song); // With the same index.
+                currentPlayingSong = song; // Define current playing song.
+                playerEnabled = true;
 
-            /*
-            * Creating the Bitstream, Decoder and AudioDevice.
-            */
-            this.device = FactoryRegistry.systemRegistry().createAudioDevice();
-            this.device.open(this.decoder = new Decoder());
-            this.bitstream = new Bitstream(currentPlayingSong.getBufferedInputStream());
+                updateWindow("Song changed", () -> { // Update the mini player and enable its buttons.
+                    window.setPlayingSongInfo(song.getTitle(), song.getAlbum(), song.getArtist());
+                    window.setPlayPauseButtonIcon(window.BUTTON_ICON_PAUSE); // If the player is paused, jump to the song and resume.
+                    window.setEnabledPlayPauseButton(true);
+                    window.setEnabledStopButton(true);
+                    window.setEnabledScrubber(true);
+                });
 
-            skipToFrame(0);
-            newPlay = false;
-            currentFrame = 0;
-            playing(currentPlayingSong);
+                /*
+                * Creating the Bitstream and Decoder. The AudioDevice is reused, only the audio not played yet is discarded.
+                */
+                this.decoder = new Decoder();
+                this.bitstream = new Bitstream(currentPlayingSong.getInputStream());
 
+                currentFrame = 0;
+                skipToFrame(0);
+                startPipeline();
+                verifyNextPrevious();
+                newState = PlaybackState.PLAYING;
+                PlaybackMetrics.trackSwitched(System.nanoTime() - start);
+                startTrack(song, false);
+            }
+            finally {
+                endSongChange(newState);
+            }
         }
-        catch (JavaLayerException | FileNotFoundException e) {
+        catch (JavaLayerException | IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     /**
-     * A runnable that plays the song.
+     * Body of the playing thread. It plays one frame at a time while PLAYING and parks in any other state, so pausing
+     * and resuming never creates a new thread. Frames are only taken under the lock once they are decoded: waiting for
+     * the decoder and writing to the device are done without it, so commands never wait for either.
      */
-    private void playing(Song currentSong){
-        threadPlaying = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                int musicLength = currentSong.getNumFrames(); // Getting the length of the music in frames
-                float musicMS = currentSong.getMsPerFrame();
+    private void playing(){
+        DecodePipeline waitFor = null; // Pipeline with no frame ready, waited for without the lock.
+        while (true){
+            DecodePipeline framePipeline;
+            int frameCount; // Frames taken from the pipeline, written at once.
+            int generation;
+
+            if (waitFor != null) {
+                waitFor.awaitReady(); // Commands run meanwhile, a song change closes it.
+                waitFor = null;
+            }
+            thread.lock();
+            try {
+                while (state != PlaybackState.PLAYING) {
+                    stateChanged.awaitUninterruptibly(); // Paused, seeking or stopped.
+                }
+                Song song = currentPlayingSong;
+                int musicLength = song.getNumFrames(); // Getting the length of the music in frames
+                float musicMS = song.getMsPerFrame();
                 musicLength *= (int) (musicMS); // Converting frames to millisecond.
 
-                while (playPauseButton == 1){ // While the player is not paused.
-                    thread.lock();
-                    try {
-                        if (!dragged){
-                            currentFrame += 1;
-                            window.setTime((int) (currentFrame * musicMS), musicLength); // Setting the timer in the mini player.
-                        }
-                        verifyNextPrevious();
-
-                        if (!playNextFrame()){ // If have no more frames to play, the next song will play.
-                            if (!loopActivated) {
-                                if (currentSong == songs.get(songs.size() - 1)) {
-                                    stop();
-                                } else {
-                                    next(); // Go to the next music in the queue
-                                }
-                            }
-                            else { // If the loop is activated.
-                                next();
-                            }
-                        }
+                prefetchNext(); // Prepare the next song when this one is about to end.
 
-                        if (newPlay){ // If a new song is about to play, stops the current one.
-                            break;
+                framePipeline = pipeline;
+                if (!framePipeline.isReady()) { // The decoder is behind, e.g. the first frame after a seek.
+                    waitFor = framePipeline;
+                    continue;
+                }
+                generation = device.getGeneration();
+                frameCount = framePipeline.takeBatch(WRITE_BATCH); // Never waits, a frame is ready.
+                if (!dragged){
+                    currentFrame += frameCount;
+                    window.publishTime((int) (currentFrame * musicMS), musicLength); // The mini player shows it on its next refresh.
+                }
+                if (frameCount == 0) {
+                    // If have no more frames to play, the next song will play. A closed pipeline is being replaced.
+                    if (!framePipeline.isClosed() && state == PlaybackState.PLAYING) {
+                        if (isNextPipelineDecoding()) {
+                            waitFor = nextPipeline;
+                        }
+                        else if (!handOverToNext()) {
+                            state = PlaybackState.SEEKING; // Waits for the command.
+                            commands.submit(() -> advance(song, "Finished")); // Go to the next music in the queue, never absorbed.
                         }
-
-                    } catch (JavaLayerException e) {
-                        throw new RuntimeException(e);
-                    }
-                    finally {
-                        thread.unlock();
                     }
+                    continue;
+                }
+                else {
+                    failedInARow = 0;
+                }
+            } catch (JavaLayerException e) { // The song can't be decoded, skip it.
+                state = PlaybackState.SEEKING;
+                Song failed = currentPlayingSong;
+                LOG.log(Level.WARNING, "Song can't be decoded: " + failed.getFilePath(), e);
+                if (++failedInARow < queue.size()) {
+                    commands.submit(() -> advance(failed, "Failed"));
                 }
+                else { // Every song in the queue failed, don't loop over them.
+                    failedInARow = 0;
+                    commands.submit(() -> stop("Failed"));
+                    reportError("No song in the queue can be played.", e);
+                }
+                continue;
             }
-        });
-        threadPlaying.start();
+            finally {
+                thread.unlock();
+            }
+
+            try {
+                writeFrames(generation, framePipeline, frameCount);
+                framePipeline.release(frameCount);
+                long requestedAt = resumeRequestedAt;
+                if (requestedAt != 0) { // First frame written after a resume.
+                    resumeLatency = System.nanoTime() - requestedAt;
+                    resumeRequestedAt = 0;
+                }
+            } catch (JavaLayerException e) { // The audio device failed, nothing can play.
+                state = PlaybackState.SEEKING;
+                commands.submit(this::stop);
+                reportError("The audio device failed, playback stopped.", e);
+            }
+        }
     }
 
     /**
-     * Removes the current selected song from the playlist.
+     * Makes the playing thread park at the end of the current frame and takes the lock, so the song can be changed.
+     * Must be followed by {@link #endSongChange(PlaybackState)}.
      */
-    private void remove(){
-        String selectedSong = window.getSelectedSong();
-        int queueLength = musicQueue.length; // Length of the queue.
-        String[][] tempQueue = new String[queueLength - 1][6]; // Creating a queue with -1 length of the musicQueue.
-        String[][] tempUnshuffledQueue = new String[queueLength - 1][6];
-        int newIndex = 0; // Defines the new index for each music in the queue.
-        int newUnshuffledIndex = 0; // Defines the new index for each music in the unshuffled queue.
+    private void beginSongChange() {
+        state = PlaybackState.SEEKING;
+        if (pipeline != null) pipeline.close(); // Wakes the playing thread if it is waiting for a frame.
+        device.reset(); // Unblocks the playing thread if it is waiting to write.
+        thread.lock();
+        device.reset(); // Discards anything written before the playing thread parked.
+    }
 
-        for (int i = 0; i < queueLength; i++) {
-            if (selectedSong != musicQueue[i][5]) { // Remove the song in the queue.
-                tempQueue[newIndex] = musicQueue[i];
-                newIndex++;
-            }
-            else{
-                if (currentPlayingSong == songs.get(i) || loopActivated){
-                    next(); // If the song is not the last one, jump to the next song.
-                }
-                if (currentPlayingSong == songs.get(songs.size()-1)){
-                    stop(); // Stops the song, if the playing song is the last in the queue.
-                }
-                songs.remove(i);
+    /**
+     * Releases the lock taken by {@link #beginSongChange()} and wakes the playing thread.
+     *
+     * @param newState State after the change.
+     */
+    private void endSongChange(PlaybackState newState) {
+        try {
+            state = newState;
+            if (newState == PlaybackState.PLAYING) device.resume();
+            stateChanged.signalAll();
+        }
+        finally {
+            thread.unlock();
+        }
+    }
+
+    /**
+     * Removes a song from the playlist.
+     *
+     * @param selectedSong Song selected in the queue.
+     */
+    private void remove(Song selectedSong){
+        PlayerEvents.QueueMutated event = new PlayerEvents.QueueMutated();
+        event.begin();
+        thread.lock();
+        try {
+            int index = queue.indexOf(selectedSong); // Index of the song in the queue.
+            if (index < 0) return;
+            if (currentPlayingSong == queue.get(index) || loopActivated){
+                skip(1); // If the song is not the last one, jump to the next song.
             }
-            if (shuffleActivated) { // Remove the song in the unshuffled queue.
-                if (selectedSong != unshuffledMusicQueue[i][5]) {
-                    tempUnshuffledQueue[newUnshuffledIndex] = unshuffledMusicQueue[i];
-                    newUnshuffledIndex++;
-                } else {
-                    unshuffledSongs.remove(i);
-                }
+            if (currentPlayingSong == queue.getLast()){
+                stop(); // Stops the song, if the playing song is the last in the queue.
             }
+            queue.remove(index);
+            updateWindow("Song removed", () -> window.removeFromQueueList(index)); // Update the playlist
+            verifyShuffleLoop();
+            nextPipelineStale = true;
+            verifyNextPrevious();
+            commitQueueMutated(event, "Remove", 1);
+        }
+        finally {
+            thread.unlock();
         }
-
-        musicQueue = tempQueue;
-        unshuffledMusicQueue = tempUnshuffledQueue;
-        verifyShuffleLoop();
-        window.setQueueList(musicQueue); // Update the playlist
     }
 
     /**
-     * Used to add songs to the playlist.
+     * Used to add songs to the playlist. The file chooser runs in the EDT, the song is added by a command.
+     * Many files or folders are imported in the background.
      */
     private void add() {
         try {
-            Song song = window.openFileChooser(); // Used to get the current added song.
-
-            if (song != null) {
-                String[] currentSong = song.getDisplayInfo(); // Get the information of the song.
-                int queueLength = musicQueue != null ? musicQueue.length : 0; // Getting the length of the queue.
-                String[][] tempQueue = new String[queueLength + 1][6]; // Creating a queue with +1 length of the musicQueue.
-                String[][] tempUnshuffledQueue = new String[queueLength + 1][6];
-
-                for (int i = 0; i < queueLength; i++) { // Transfer all the elements in the music queue to the temp queue.
-                    tempQueue[i] = musicQueue[i];
-                    if (shuffleActivated){
-                        tempUnshuffledQueue[i] = unshuffledMusicQueue[i];
-                    }
-                }
+            File[] files = window.openFileChooser(); // Used to get the files to add.
 
-                songs.add(song); // adding the new song into the queue.
-                tempQueue[queueLength] = currentSong;
-                musicQueue = tempQueue;
-                if (shuffleActivated){ // adding the new song into the unshuffled queue.
-                    unshuffledSongs.add(song);
-                    tempUnshuffledQueue[queueLength] = currentSong;
-                    unshuffledMusicQueue = tempUnshuffledQueue;
-                }
-                verifyShuffleLoop();
-                window.setQueueList(musicQueue); // Update the playlist.
+            if (files.length == 1 && PlaylistFile.isPlaylistFile(files[0].toPath())) {
+                commands.submit(() -> openPlaylist(files[0].toPath()));
+            }
+            else if (files.length == 1 && files[0].isFile() && !M3uPlaylist.isM3uFile(files[0].toPath())) {
+                Song song = window.readSong(files[0]); // Used to get the current added song.
+                commands.submit(() -> add(song));
+            }
+            else if (files.length > 0) {
+                FolderImporter importer = new FolderImporter(List.of(files),
+                        songs -> commands.submit(() -> addAll(songs)), FolderImporter.DEFAULT_THREADS);
+                window.showImportProgress(importer);
+                importer.execute();
             }
         }
         catch (IOException | BitstreamException | UnsupportedTagException | InvalidDataException e) {
@@ -262,175 +398,264 @@ public class Player {
     }
 
     /**
-     * Play and pause the current playing song.
+     * Adds the song to the end of the playlist.
+     *
+     * @param song Song to add.
      */
-    private void playPause(){
-        if (playPauseButton == 1){ // Pause the song.
-            playPauseButton = 0;
-            window.setPlayPauseButtonIcon(playPauseButton);
+    private void add(Song song) {
+        PlayerEvents.QueueMutated event = new PlayerEvents.QueueMutated();
+        event.begin();
+        thread.lock();
+        try {
+            queue.add(song); // adding the new song into the queue.
+            song.buildFrameIndex(); // Index the frames in background, used to seek.
+            refineLength(song);
+            verifyShuffleLoop();
+            nextPipelineStale = true;
+            verifyNextPrevious();
+            updateWindow("Song added", () -> window.addToQueueList(song)); // Update the playlist.
+            commitQueueMutated(event, "Add", 1);
         }
-        else{ // Resume the song.
-            playPauseButton = 1;
-            window.setPlayPauseButtonIcon(playPauseButton);
-            playing(currentPlayingSong);
+        finally {
+            thread.unlock();
         }
-
     }
 
     /**
-     * Stop the reproduction of the current playing song and return the player to default.
+     * Adds a batch of imported songs to the end of the playlist. Their frames are only indexed when they play.
+     *
+     * @param songs Songs to add.
      */
-    private void stop(){
-        playerEnabled = false;
-        playPauseButton = 0;
-        window.resetMiniPlayer();
+    private void addAll(List<Song> songs) {
+        PlayerEvents.QueueMutated event = new PlayerEvents.QueueMutated();
+        event.begin();
+        thread.lock();
+        try {
+            for (Song song : songs) {
+                queue.add(song); // Their length is refined when they play, imports don't scan every file.
+            }
+            verifyShuffleLoop();
+            nextPipelineStale = true;
+            verifyNextPrevious();
+            updateWindow("Songs added", () -> window.addToQueueList(songs)); // Update the playlist.
+            commitQueueMutated(event, "Add", songs.size());
+        }
+        finally {
+            thread.unlock();
+        }
     }
 
     /**
-     * Jump to the previous song in the queue.
+     * Adds the songs of a {@link PlaylistFile} to the end of the playlist. Nothing is added if the file doesn't exist.
+     *
+     * @param file Playlist file.
      */
-    private void previous() {
+    private void openPlaylist(Path file) {
+        if (!file.toFile().isFile()) return;
         try {
-            if (currentPlayingSong != songs.get(0) || loopActivated) {
-                if (threadPlaying != null && threadPlaying.isAlive())
-                    threadPlaying.interrupt(); // Interrupt the playing thread.
-                newPlay = true;
-                int previousSongIndex = songs.size() - 1; // Index of the previous song in the queue.
-
-                if (currentPlayingSong != songs.get(0) || !loopActivated) {
-                    for (int i = 0; i < songs.size(); i++) {
-                        if (currentPlayingSong == songs.get(i)) { // Update the mini player and get the index of the song.
-                            window.setPlayingSongInfo(musicQueue[i - 1][0], musicQueue[i - 1][1], musicQueue[i - 1][2]);
-                            previousSongIndex = i - 1;
-                        }
-                    }
-                }
-                else {
-                    window.setPlayingSongInfo(musicQueue[previousSongIndex][0], musicQueue[previousSongIndex][1], musicQueue[previousSongIndex][2]);
-                }
-                currentPlayingSong = songs.get(previousSongIndex); // Define current playing song.
-
-                /*
-                * Creating the Bitstream, Decoder and AudioDevice.
-                */
-                this.device = FactoryRegistry.systemRegistry().createAudioDevice();
-                this.device.open(this.decoder = new Decoder());
-                this.bitstream = new Bitstream(currentPlayingSong.getBufferedInputStream());
+            List<Song> songs = PlaylistFile.load(file);
+            if (!songs.isEmpty()) addAll(songs);
+        }
+        catch (IOException e) {
+            reportError("The playlist " + file + " can't be opened.", e); // The queue stays as it was.
+        }
+    }
 
-                skipToFrame(0);
-                newPlay = false;
-                currentFrame = 0;
-                if (playPauseButton == 0){ // If the player is paused, jump to the song and resume.
-                    playPause();
-                }
-                else {
-                    playing(currentPlayingSong);
-                }
+    /**
+     * Saves the queue, in the order it plays, as an M3U or M3U8 playlist or as a {@link PlaylistFile}, by the
+     * extension of the file.
+     *
+     * @param file Playlist file.
+     */
+    private void savePlaylist(Path file) {
+        List<Song> songs;
+        thread.lock();
+        try {
+            songs = queue.getSongs();
+        }
+        finally {
+            thread.unlock();
+        }
+        try {
+            if (M3uPlaylist.isM3uFile(file)) {
+                M3uPlaylist.write(songs, file);
+            }
+            else {
+                PlaylistFile.save(songs, file);
             }
         }
-        catch (JavaLayerException | FileNotFoundException e){
+        catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     /**
-     * Jump to the next song in the queue.
+     * Counts the frames of the song in background, if its length was estimated, and shows the exact length.
+     *
+     * @param song Song in the queue whose frame index is being built.
+     */
+    private void refineLength(Song song) {
+        SongLoader.refine(song).thenAccept(changed -> {
+            if (changed) commands.submit(() -> updateQueueRow(song));
+        });
+    }
+
+    /**
+     * Shows the current information of the song in the queue list, if it is still in the queue.
+     *
+     * @param song Song that changed.
      */
-    private void next() {
+    private void updateQueueRow(Song song) {
+        thread.lock();
         try {
-            if (currentPlayingSong != songs.get(songs.size() - 1) || loopActivated) {
-                if (threadPlaying != null && threadPlaying.isAlive())
-                    threadPlaying.interrupt(); // Interrupt the playing thread.
-                newPlay = true;
-                int nextSongIndex = 0; // Index of the next song in the queue.
-
-                if (currentPlayingSong != songs.get(songs.size() - 1) || !loopActivated) {
-                    for (int i = 0; i < songs.size(); i++) {
-                        if (currentPlayingSong == songs.get(i)) { // Update the mini player and get the index of the song.
-                            window.setPlayingSongInfo(musicQueue[i + 1][0], musicQueue[i + 1][1], musicQueue[i + 1][2]);
-                            nextSongIndex = i + 1;
-                        }
-                    }
-                }
-                else {
-                    window.setPlayingSongInfo(musicQueue[0][0], musicQueue[0][1], musicQueue[0][2]);
-                }
-                currentPlayingSong = songs.get(nextSongIndex); // Define current playing song.
-
-                /*
-                 * Creating the Bitstream, Decoder and AudioDevice.
-                 */
-                this.device = FactoryRegistry.systemRegistry().createAudioDevice();
-                this.device.open(this.decoder = new Decoder());
-                this.bitstream = new Bitstream(currentPlayingSong.getBufferedInputStream());
-
-                skipToFrame(0);
-                newPlay = false;
-                currentFrame = 0;
-                if (playPauseButton == 0) { // If the player is paused, jump to the song and resume.
-                    playPause();
-                } else {
-                    playing(currentPlayingSong);
-                }
+            store.updateLength(song);
+            int index = queue.indexOf(song);
+            if (index >= 0) {
+                updateWindow("Song updated", () -> window.updateInQueueList(index));
             }
         }
-        catch (JavaLayerException | FileNotFoundException e) {
-            throw new RuntimeException(e);
+        finally {
+            thread.unlock();
         }
     }
 
     /**
-     * Used to activate shuffle in the queue.
+     * Play and pause the current playing song.
      */
-    private void shuffle() {
-        if (!shuffleActivated) { // If shuffle is not activated
-            unshuffledMusicQueue = Arrays.copyOf(musicQueue, musicQueue.length);
-            unshuffledSongs = new ArrayList<>(songs);
-            int indexCurrentPlaying = 0;
-
-            Song[] songsArray = new Song[songs.size()];
-            for (int i = 0; i < songs.size(); i++) {
-                songsArray[i] = songs.get(i);
+    private void playPause(){
+        if (state == PlaybackState.PLAYING){ // Pause the song.
+            state = PlaybackState.PAUSED; // The playing thread parks after the current frame.
+            device.pause();
+            updateWindow("Paused", () -> window.setPlayPauseButtonIcon(window.BUTTON_ICON_PLAY));
+        }
+        else if (state == PlaybackState.PAUSED){ // Resume the song.
+            device.resume();
+            thread.lock();
+            try {
+                resumeRequestedAt = System.nanoTime();
+                state = PlaybackState.PLAYING;
+                stateChanged.signalAll();
             }
+            finally {
+                thread.unlock();
+            }
+            updateWindow("Resumed", () -> window.setPlayPauseButtonIcon(window.BUTTON_ICON_PAUSE));
+        }
+    }
 
-            for (int i = 0; i < songs.size(); i++) {
-                int index = random.nextInt(i + 1); // Generate a random index
+    /**
+     * Stop the reproduction of the current playing song and return the player to default.
+     */
+    private void stop(){
+        stop("Stopped");
+    }
 
-                Song temp1 = songsArray[i]; // Swap the songs array.
-                songsArray[i] = songsArray[index];
-                songsArray[index] = temp1;
+    /**
+     * Stop the reproduction of the current playing song and return the player to default.
+     *
+     * @param endReason Why the current song ended, see {@link #endTrack(String)}.
+     */
+    private void stop(String endReason){
+        beginSongChange();
+        try {
+            endTrack(endReason);
+            nextPipelineStale = true;
+            playerEnabled = false;
+            updateWindow("Stopped", window::resetMiniPlayer);
+        }
+        finally {
+            endSongChange(PlaybackState.STOPPED);
+        }
+    }
 
-                String[] temp2 = musicQueue[i]; // Swap the music queue.
-                musicQueue[i] = musicQueue[index];
-                musicQueue[index] = temp2;
+    /**
+     * Jumps forward (positive offset) or backward in the queue. Many clicks on next or previous are collapsed into
+     * one offset, so only the last song is opened.
+     *
+     * @param offset Number of songs to skip.
+     */
+    private void skip(int offset) {
+        if (currentPlayingSong == null || queue.isEmpty() || offset == 0) {
+            advanceIfEnded();
+            return;
+        }
+        int index = queue.indexOf(currentPlayingSong); // Index of the current song in the queue.
+        int targetIndex;
+        if (loopActivated) { // Wraps around the queue.
+            targetIndex = Math.floorMod(index + offset, queue.size());
+        }
+        else { // Stops at the first or last song.
+            targetIndex = Math.max(0, Math.min(index + offset, queue.size() - 1));
+        }
+        if (targetIndex != index || loopActivated) {
+            changeSong(targetIndex);
+        }
+        else {
+            advanceIfEnded();
+        }
+    }
+
+    /**
+     * Plays the song after the one that ended, or stops at the end of the queue. Does nothing if another command
+     * already changed the song, e.g. a click on "Play Now" or "Previous" that was waiting before it.
+     *
+     * @param ended     Song that reached its end.
+     * @param endReason Finished, or Failed if it could not be decoded.
+     */
+    private void advance(Song ended, String endReason) {
+        thread.lock();
+        try {
+            if (state != PlaybackState.SEEKING || currentPlayingSong != ended) return;
+            int index = queue.indexOf(ended);
+            if (index >= 0 && index < queue.size() - 1) {
+                changeSong(index + 1, endReason);
+            }
+            else if (index >= 0 && loopActivated) {
+                changeSong(0, endReason);
             }
+            else {
+                stop(endReason); // Last song, or it was removed from the queue.
+            }
+        }
+        finally {
+            thread.unlock();
+        }
+    }
 
-            if (threadPlaying != null && threadPlaying.isAlive()){ // If thread playing is alive, the current playing song go to the head of the queue.
-                for (int i = 0; i < songs.size(); i++){ // Get the index of the current song in the shuffled queue.
-                    if (songsArray[i] == currentPlayingSong){
-                        indexCurrentPlaying = i;
-                    }
-                }
-                Song temp1 = songsArray[0]; // Swap the songs array.
-                songsArray[0] = songsArray[indexCurrentPlaying];
-                songsArray[indexCurrentPlaying] = temp1;
+    /**
+     * Advances if the current song ended while a command that didn't change the song was waiting, so the player never
+     * stays SEEKING.
+     */
+    private void advanceIfEnded() {
+        Song song = currentPlayingSong;
+        if (state == PlaybackState.SEEKING && song != null) advance(song, "Finished");
+    }
 
-                String[] temp2 = musicQueue[0]; // Swap the music queue.
-                musicQueue[0] = musicQueue[indexCurrentPlaying];
-                musicQueue[indexCurrentPlaying] = temp2;
+    /**
+     * Used to activate shuffle in the queue.
+     */
+    private void shuffle() {
+        PlayerEvents.QueueMutated event = new PlayerEvents.QueueMutated();
+        event.begin();
+        thread.lock();
+        try {
+            String operation;
+            if (!queue.isShuffled()) { // If shuffle is not activated
+                // If a song is playing, the current playing song go to the head of the queue.
+                queue.shuffle(playerEnabled ? currentPlayingSong : null, random);
+                operation = "Shuffle";
             }
-
-            songs.clear();
-            Collections.addAll(songs, songsArray);
-            window.setQueueList(musicQueue);
-            shuffleActivated = true;
+            else { // If shuffle is already activated
+                queue.unshuffle();
+                operation = "Unshuffle";
+            }
+            updateQueueList();
+            nextPipelineStale = true;
+            verifyNextPrevious();
+            commitQueueMutated(event, operation, 0);
         }
-        else { // If shuffle is already activated
-            musicQueue = Arrays.copyOf(unshuffledMusicQueue, unshuffledMusicQueue.length);
-            songs = new ArrayList<>(unshuffledSongs);
-
-            window.setQueueList(musicQueue);
-            shuffleActivated = false;
+        finally {
+            thread.unlock();
         }
     }
 
@@ -438,121 +663,419 @@ public class Player {
      * Used to activate the loop in the queue.
      */
     private void loop(){
-        loopActivated = !loopActivated;
+        thread.lock();
+        try {
+            loopActivated = !loopActivated;
+            nextPipelineStale = true;
+            verifyNextPrevious();
+        }
+        finally {
+            thread.unlock();
+        }
+    }
+
+    /**
+     * Shows a copy of the queue in the window.
+     */
+    private void updateQueueList(){
+        int[] records = queue.getRecords();
+        updateWindow("Queue order changed", () -> window.setQueueList(records));
+    }
+
+    /**
+     * Runs a change of the window in the EDT, recorded as a {@link PlayerEvents.UiUpdatePublished} event that lasts
+     * until the change is done.
+     *
+     * @param update Name of the update.
+     * @param change Change of the window.
+     */
+    private void updateWindow(String update, Runnable change) {
+        PlayerEvents.UiUpdatePublished event = new PlayerEvents.UiUpdatePublished();
+        event.begin();
+        EventQueue.invokeLater(() -> {
+            change.run();
+            event.update = update;
+            event.commit();
+        });
+    }
+
+    /**
+     * Logs the error and shows it in the window.
+     *
+     * @param message What failed.
+     * @param e       Error that caused it.
+     */
+    private void reportError(String message, Exception e) {
+        LOG.log(Level.WARNING, message, e);
+        updateWindow("Error", () -> window.showError(message, e));
+    }
+
+    private void commitQueueMutated(PlayerEvents.QueueMutated event, String operation, int songs) {
+        event.operation = operation;
+        event.songs = songs;
+        event.queueSize = queue.size();
+        event.commit();
+    }
+
+    private void startTrack(Song song, boolean gapless) {
+        PlayerEvents.TrackStarted event = new PlayerEvents.TrackStarted();
+        if (!event.shouldCommit()) return;
+        event.title = song.getTitle();
+        event.path = song.getFilePath();
+        event.gapless = gapless;
+        event.commit();
+    }
+
+    /**
+     * Records the end of the current song, if one is playing.
+     *
+     * @param reason Finished, Changed, Stopped or Failed.
+     */
+    private void endTrack(String reason) {
+        Song song = currentPlayingSong;
+        if (!playerEnabled || song == null) return;
+        PlayerEvents.TrackEnded event = new PlayerEvents.TrackEnded();
+        if (!event.shouldCommit()) return;
+        event.title = song.getTitle();
+        event.path = song.getFilePath();
+        event.frame = currentFrame;
+        event.reason = reason;
+        event.commit();
     }
 
     /**
      * Checks if is possible to shuffle or loop the playlist.
      */
     private void verifyShuffleLoop(){
-        window.setEnabledShuffleButton(songs.size() > 1);
-        window.setEnabledLoopButton(songs.size() > 0);
+        int queueSize = queue.size();
+        updateWindow("Shuffle and loop buttons", () -> {
+            window.setEnabledShuffleButton(queueSize > 1);
+            window.setEnabledLoopButton(queueSize > 0);
+        });
     }
 
     /**
      * Checks if is possible to skip or rewind songs.
      */
     private void verifyNextPrevious(){
-        if (loopActivated){ // Always turn on previous and next buttons, if loop is activated.
-            window.setEnabledPreviousButton(true);
-            window.setEnabledNextButton(true);
-        }
-        else {
-            /*
-             * if only have one song.
-             */
-            if (currentPlayingSong == songs.get(0) && currentPlayingSong == songs.get(songs.size() - 1)) {
-                window.setEnabledPreviousButton(false);
-                window.setEnabledNextButton(false);
-            }
-            /*
-             * If only have song to skip.
-             */
-            if (currentPlayingSong == songs.get(0) && currentPlayingSong != songs.get(songs.size() - 1)) {
-                window.setEnabledPreviousButton(false);
-                window.setEnabledNextButton(true);
-            }
-            /*
-             * If only have song to rewind.
-             */
-            if (currentPlayingSong != songs.get(0) && currentPlayingSong == songs.get(songs.size() - 1)) {
-                window.setEnabledPreviousButton(true);
-                window.setEnabledNextButton(false);
-            }
-            /*
-             * If have songs to skip and rewind.
-             */
-            if (currentPlayingSong != songs.get(0) && currentPlayingSong != songs.get(songs.size() - 1)) {
-                window.setEnabledPreviousButton(true);
-                window.setEnabledNextButton(true);
-            }
-        }
+        if (!playerEnabled || currentPlayingSong == null || queue.isEmpty()) return;
+        boolean isFirst = currentPlayingSong == queue.get(0);
+        boolean isLast = currentPlayingSong == queue.getLast();
+        // Always turn on previous and next buttons, if loop is activated.
+        boolean enablePrevious = loopActivated || !isFirst;
+        boolean enableNext = loopActivated || !isLast;
+        updateWindow("Next and previous buttons", () -> {
+            window.setEnabledPreviousButton(enablePrevious);
+            window.setEnabledNextButton(enableNext);
+        });
     }
 
     private void scrubberDrag(){
         dragged = true;
-        currentFrame = window.getScrubberValue(); // Get the time in the scrubber.
-        window.setTime(currentFrame, (int) currentPlayingSong.getMsLength()); // Update the mini player
+        int scrubberTime = window.getScrubberValue(); // Get the time in the scrubber.
+        window.setTime(scrubberTime, (int) currentPlayingSong.getMsLength()); // Update the mini player
     }
 
     private void scrubberRelease(){
-       try {
-           if (threadPlaying != null && threadPlaying.isAlive()) threadPlaying.interrupt();
-           newPlay = true;
+        int scrubberTime = window.getScrubberValue(); // Get the time in the scrubber.
+        PlayerEvents.SeekRequested event = new PlayerEvents.SeekRequested();
+        event.target = scrubberTime;
+        event.commit();
+        commands.submit(new SeekCommand(scrubberTime));
+    }
 
-           device = FactoryRegistry.systemRegistry().createAudioDevice();
-           device.open(decoder = new Decoder());
-           bitstream = new Bitstream(currentPlayingSong.getBufferedInputStream());
+    /**
+     * Moves the current song to the given time.
+     *
+     * @param scrubberTime Time in milliseconds.
+     */
+    private void seek(int scrubberTime){
+       try {
+           long start = System.nanoTime();
+           PlayerEvents.SeekCompleted event = new PlayerEvents.SeekCompleted();
+           event.begin();
+           PlaybackState previousState = state; // Seeking doesn't change between playing and paused.
+           if (previousState == PlaybackState.STOPPED) return;
+           PlaybackState newState = PlaybackState.STOPPED; // Stays stopped if the song can't be opened.
+           beginSongChange();
+           try {
+               decoder = new Decoder();
+               FrameIndex frameIndex = currentPlayingSong.getFrameIndex();
 
-           int scrubberTime = window.getScrubberValue(); // Get the time in the scrubber.
-           float musicMS = currentPlayingSong.getMsPerFrame();
-           int newFrame = (int) (scrubberTime/musicMS); // Get the new frame of the song.
+               if (frameIndex != null) { // Open the stream directly at the new frame.
+                   int newFrame = frameIndex.getFrameAt(scrubberTime);
+                   bitstream = new Bitstream(currentPlayingSong.getInputStream(frameIndex.getOffset(newFrame)));
+                   currentFrame = newFrame;
+               }
+               else { // The index is not ready yet, skip frame by frame.
+                   bitstream = new Bitstream(currentPlayingSong.getInputStream());
+                   float musicMS = currentPlayingSong.getMsPerFrame();
+                   int newFrame = (int) (scrubberTime/musicMS); // Get the new frame of the song.
 
-           currentFrame = 0;
-           skipToFrame(newFrame); // Skip the song to the new frame.
-           currentFrame = newFrame;
-           dragged = false;
-           newPlay = false;
-           playing(currentPlayingSong); // Return the song at the new frame.
+                   currentFrame = 0;
+                   skipToFrame(newFrame); // Skip the song to the new frame.
+                   event.framesSkipped = currentFrame;
+                   currentFrame = newFrame;
+               }
+               startPipeline();
+               newState = previousState == PlaybackState.PAUSED ? PlaybackState.PAUSED : PlaybackState.PLAYING;
+               PlaybackMetrics.seekDone(System.nanoTime() - start);
+               event.target = scrubberTime;
+               event.frame = currentFrame;
+               event.commit();
+           }
+           finally {
+               dragged = false;
+               endSongChange(newState);
+           }
 
-       } catch (FileNotFoundException | JavaLayerException e) {
+       } catch (IOException | JavaLayerException e) {
            throw new RuntimeException(e);
        }
     }
 
     private void scrubberPress(){
         dragged = true;
-        currentFrame = window.getScrubberValue(); // Get the time in the scrubber.
-        window.setTime(currentFrame, (int) currentPlayingSong.getMsLength()); // Update the mini player
+        int scrubberTime = window.getScrubberValue(); // Get the time in the scrubber.
+        window.setTime(scrubberTime, (int) currentPlayingSong.getMsLength()); // Update the mini player
     }
 
+    //<editor-fold desc="Commands">
+
+    /**
+     * Plays the selected song. Only the last of many waiting clicks on "Play Now" is played.
+     */
+    private final class PlayNowCommand implements CommandQueue.Command {
+        private Song selectedSong;
+
+        private PlayNowCommand(Song selectedSong) {
+            this.selectedSong = selectedSong;
+        }
+
+        @Override
+        public void run() {
+            playNow(selectedSong);
+        }
+
+        @Override
+        public boolean absorb(CommandQueue.Command later) {
+            if (!(later instanceof PlayNowCommand playNow)) return false;
+            selectedSong = playNow.selectedSong;
+            return true;
+        }
+    }
+
+    /**
+     * Skips songs. Waiting clicks on next and previous are added into a single offset.
+     */
+    private final class SkipCommand implements CommandQueue.Command {
+        private int offset;
+
+        private SkipCommand(int offset) {
+            this.offset = offset;
+        }
+
+        @Override
+        public void run() {
+            skip(offset);
+        }
+
+        @Override
+        public boolean absorb(CommandQueue.Command later) {
+            if (!(later instanceof SkipCommand skip)) return false;
+            offset += skip.offset;
+            return true;
+        }
+    }
+
+    /**
+     * Seeks the current song. Only the last of many waiting seeks is done.
+     */
+    private final class SeekCommand implements CommandQueue.Command {
+        private int scrubberTime;
+
+        private SeekCommand(int scrubberTime) {
+            this.scrubberTime = scrubberTime;
+        }
+
+        @Override
+        public void run() {
+            seek(scrubberTime);
+        }
+
+        @Override
+        public boolean absorb(CommandQueue.Command later) {
+            if (!(later instanceof SeekCommand seek)) return false;
+            scrubberTime = seek.scrubberTime;
+            return true;
+        }
+    }
+
+    /**
+     * Toggles play and pause. Two waiting toggles cancel each other.
+     */
+    private final class PlayPauseCommand implements CommandQueue.Command {
+        private int toggles = 1;
+
+        @Override
+        public void run() {
+            if (toggles % 2 == 1) playPause();
+        }
+
+        @Override
+        public boolean absorb(CommandQueue.Command later) {
+            if (!(later instanceof PlayPauseCommand)) return false;
+            toggles++;
+            return true;
+        }
+    }
+    //</editor-fold>
+
     //<editor-fold desc="Essential">
 
     /**
-     * @return False if there are no more frames to play.
+     * Replaces the decode pipeline with a new one reading from the current bitstream.
+     */
+    private void startPipeline() {
+        if (pipeline != null) pipeline.close();
+        nextPipelineStale = true; // The song changed, so may the next one.
+        pipeline = new DecodePipeline(bitstream, decoder, pipelineDepth());
+        pipeline.start();
+    }
+
+    /**
+     * @return the depth of a new pipeline, enough to decode the next batch while one is written.
+     */
+    private static int pipelineDepth() {
+        return Math.max(DecodePipeline.getAdaptiveDepth(), 2 * WRITE_BATCH);
+    }
+
+    /**
+     * @return the song that plays after the current one ends or null if the player should stop.
      */
-    private boolean playNextFrame() throws JavaLayerException {
-        // TODO: Is this thread safe?
-        if (device != null) {
-            Header h = bitstream.readFrame();
-            if (h == null) return false;
+    private Song nextSong() {
+        int index = queue.indexOf(currentPlayingSong);
+        if (index < 0) return null;
+        if (index < queue.size() - 1) return queue.get(index + 1);
+        return loopActivated ? queue.get(0) : null;
+    }
+
+    /**
+     * Starts decoding the next song when the current one is close to the end, so it can start without a gap.
+     */
+    private void prefetchNext() {
+        if (nextPipelineStale) {
+            nextPipelineStale = false;
+            discardNextPipeline();
+        }
+        if (nextPipeline != null) return;
+        boolean endIsNear = currentPlayingSong.getNumFrames() - currentFrame <= PREFETCH_FRAMES
+                || (pipeline != null && pipeline.isFinished());
+        if (!endIsNear) return;
 
-            SampleBuffer output = (SampleBuffer) decoder.decodeFrame(h, bitstream);
-            device.write(output.getBuffer(), 0, output.getBufferLength());
-            bitstream.closeFrame();
+        Song next = nextSong();
+        if (next != null) {
+            next.buildFrameIndex(); // Ready to seek when it starts.
+            refineLength(next);
+            nextPipelineSong = next;
+            nextPipeline = new DecodePipeline(next, pipelineDepth());
+            nextPipeline.start();
         }
+    }
+
+    private void discardNextPipeline() {
+        if (nextPipeline != null) nextPipeline.close();
+        nextPipeline = null;
+        nextPipelineSong = null;
+    }
+
+    /**
+     * @return True if the prefetched song is the one that should play next and its first frame is not decoded yet.
+     */
+    private boolean isNextPipelineDecoding() {
+        return !nextPipelineStale && nextPipeline != null && nextPipelineSong == nextSong() && !nextPipeline.isReady();
+    }
+
+    /**
+     * Switches to the prefetched song in the playing thread, without discarding the audio written to the device.
+     * Its first frame must be ready, see {@link #isNextPipelineDecoding()}, so the lock is never held while decoding.
+     *
+     * @return False if there is no prefetched song, it isn't the one that should play next or it can't be decoded.
+     */
+    private boolean handOverToNext() {
+        Song next = nextSong();
+        if (nextPipelineStale || nextPipeline == null || next == null || next != nextPipelineSong) {
+            nextPipelineStale = false;
+            discardNextPipeline();
+            return false;
+        }
+        long start = System.nanoTime();
+        try {
+            if (nextPipeline.take() == null) { // Nothing to play in the next song, let advance() deal with it.
+                discardNextPipeline();
+                return false;
+            }
+        } catch (JavaLayerException e) { // advance() opens it again and skips it when it fails to play.
+            discardNextPipeline();
+            return false;
+        }
+        endTrack("Finished");
+        if (pipeline != null) pipeline.close();
+        pipeline = nextPipeline;
+        decoder = pipeline.getDecoder();
+        nextPipeline = null;
+        nextPipelineSong = null;
+        currentPlayingSong = next;
+        currentFrame = 0;
+        PlaybackMetrics.trackSwitched(System.nanoTime() - start);
+        startTrack(next, true);
+        updateWindow("Song changed", () -> window.setPlayingSongInfo(next.getTitle(), next.getAlbum(), next.getArtist()));
+        verifyNextPrevious();
         return true;
     }
 
+    /**
+     * Writes decoded frames to the device with a single write, copying them into one buffer if there are many.
+     *
+     * @param generation    Generation of the device when the frames were taken, see {@link SessionAudioDevice#getGeneration()}.
+     * @param framePipeline Pipeline the frames were taken from.
+     * @param frameCount    Number of frames taken, all with the same format.
+     */
+    private void writeFrames(int generation, DecodePipeline framePipeline, int frameCount) throws JavaLayerException {
+        DecodePipeline.PcmFrame first = framePipeline.getFrame(0);
+        device.setFormat(first.getFrequency(), first.getChannels()); // Only reopens the line if the format changed.
+        short[] samples = first.getSamples();
+        int length = first.getLength();
+        if (frameCount > 1) {
+            for (int i = 1; i < frameCount; i++) {
+                length += framePipeline.getFrame(i).getLength();
+            }
+            if (batchSamples.length < length) {
+                batchSamples = new short[length];
+            }
+            length = 0;
+            for (int i = 0; i < frameCount; i++) {
+                DecodePipeline.PcmFrame frame = framePipeline.getFrame(i);
+                System.arraycopy(frame.getSamples(), 0, batchSamples, length, frame.getLength());
+                length += frame.getLength();
+            }
+            samples = batchSamples;
+        }
+        long start = System.nanoTime();
+        device.write(generation, samples, 0, length);
+        PlaybackMetrics.framesWritten(frameCount, System.nanoTime() - start);
+    }
+
     /**
      * @return False if there are no more frames to skip.
      */
     private boolean skipNextFrame() throws BitstreamException {
-        // TODO: Is this thread safe?
+        // Called with thread held, before the pipeline reads the bitstream.
         Header h = bitstream.readFrame();
         if (h == null) return false;
         bitstream.closeFrame();
         currentFrame++;
+        PlaybackMetrics.frameSkipped();
         return true;
     }
 
@@ -563,7 +1086,7 @@ public class Player {
      * @throws BitstreamException Generic Bitstream exception.
      */
     private void skipToFrame(int newFrame) throws BitstreamException {
-        // TODO: Is this thread safe?
+        // Called with thread held.
         if (newFrame > currentFrame) {
             int framesToSkip = newFrame - currentFrame;
             boolean condition = true;
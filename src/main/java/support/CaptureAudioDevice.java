@@ -0,0 +1,166 @@
+package support;
+
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.player.AudioDevice;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * AudioDevice without a sound card. The samples are written to a WAV file, or discarded if no file is given, as fast
+ * as they are decoded. Used to measure the decoding without playing the audio.
+ */
+public final class CaptureAudioDevice implements AudioDevice {
+    private static final int WAV_HEADER_SIZE = 44;
+    /**
+     * Largest size of the samples in a WAV file. The sizes in the header are 32 bits, and many readers take them as
+     * signed, so the samples must stay under 2 GiB.
+     */
+    static final long MAX_DATA_SIZE = Integer.MAX_VALUE - 36;
+
+    private final Path wavFile; // Null to discard the samples.
+    private FileChannel channel;
+    private ByteBuffer bytes = ByteBuffer.allocate(4608 * 2).order(ByteOrder.LITTLE_ENDIAN);
+    private Decoder decoder;
+    private int frequency = 0;
+    private int channels = 0;
+    private long samples = 0;
+    private boolean open = false;
+
+    /**
+     * @param wavFile File where the samples are written, or null to discard them.
+     */
+    public CaptureAudioDevice(Path wavFile) {
+        this.wavFile = wavFile;
+    }
+
+    /**
+     * Creates the WAV file. The format is taken from the decoder on the first write.
+     */
+    @Override
+    public void open(Decoder decoder) throws JavaLayerException {
+        this.decoder = decoder;
+        if (wavFile != null) {
+            try {
+                channel = FileChannel.open(wavFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                channel.position(WAV_HEADER_SIZE); // The header is written on close, when the size is known.
+            } catch (IOException e) {
+                throw new JavaLayerException("Cannot create " + wavFile, e);
+            }
+        }
+        open = true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void write(short[] samples, int offs, int len) throws JavaLayerException {
+        if (!open) return;
+        if (frequency == 0) {
+            frequency = decoder.getOutputFrequency();
+            channels = decoder.getOutputChannels();
+        }
+        if (channel != null && (this.samples + len) * 2 > MAX_DATA_SIZE) {
+            throw new JavaLayerException("Cannot write " + wavFile + ", the audio is longer than a WAV file can hold ("
+                    + MAX_DATA_SIZE / ((long) frequency * channels * 2) / 60 + " minutes)");
+        }
+        this.samples += len;
+        if (channel == null) return;
+
+        if (bytes.capacity() < len * 2) {
+            bytes = ByteBuffer.allocate(len * 2).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        bytes.clear();
+        bytes.asShortBuffer().put(samples, offs, len);
+        bytes.limit(len * 2);
+        try {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } catch (IOException e) {
+            throw new JavaLayerException("Cannot write " + wavFile, e);
+        }
+    }
+
+    /**
+     * Writes the WAV header and closes the file.
+     */
+    @Override
+    public void close() {
+        if (!open) return;
+        open = false;
+        if (channel == null) return;
+        try {
+            channel.write(wavHeader(samples * 2, frequency, channels), 0);
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * @return the time of the samples written in milliseconds.
+     */
+    @Override
+    public int getPosition() {
+        if (frequency == 0) return 0;
+        return (int) (samples * 1000 / ((long) frequency * channels));
+    }
+
+    /**
+     * @return number of samples written, counting every channel.
+     */
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return sample frequency in Hz of the samples written, or 0 if nothing was written.
+     */
+    public int getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * @return number of channels of the samples written, or 0 if nothing was written.
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * @param dataSize  Size of the samples in bytes.
+     * @param frequency Sample frequency in Hz.
+     * @param channels  Number of channels.
+     * @return the 44 bytes header of a 16 bits PCM WAV file.
+     * @throws IllegalArgumentException If the size is over {@link #MAX_DATA_SIZE}.
+     */
+    static ByteBuffer wavHeader(long dataSize, int frequency, int channels) {
+        if (dataSize > MAX_DATA_SIZE) throw new IllegalArgumentException("WAV data over 2 GiB: " + dataSize);
+        ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[]{'R', 'I', 'F', 'F'}).putInt((int) (36 + dataSize));
+        header.put(new byte[]{'W', 'A', 'V', 'E'});
+        header.put(new byte[]{'f', 'm', 't', ' '}).putInt(16);
+        header.putShort((short) 1); // PCM
+        header.putShort((short) channels);
+        header.putInt(frequency);
+        header.putInt(frequency * channels * 2); // Bytes per second.
+        header.putShort((short) (channels * 2)); // Bytes per sample frame.
+        header.putShort((short) 16);
+        header.put(new byte[]{'d', 'a', 't', 'a'}).putInt((int) dataSize);
+        return header.flip();
+    }
+}
@@ -0,0 +1,84 @@
+package support;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the player commands one at a time, in the order they were submitted, in a single thread.
+ * A command that is still waiting can absorb a later one of the same kind (e.g. many clicks on "Next"),
+ * so redundant commands are collapsed instead of piling up.
+ */
+public final class CommandQueue {
+    private static final Logger LOG = Logger.getLogger(CommandQueue.class.getName());
+
+    private final ArrayDeque<Command> pending = new ArrayDeque<>(); // Guarded by itself.
+    private final ExecutorService executor;
+    private final AtomicLong collapsed = new AtomicLong();
+
+    /**
+     * @param name Name of the thread that runs the commands.
+     */
+    public CommandQueue(String name) {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds a command to the end of the queue, unless the last waiting command absorbs it.
+     *
+     * @param command Command to run.
+     */
+    public void submit(Command command) {
+        synchronized (pending) {
+            Command last = pending.peekLast();
+            if (last != null && last.absorb(command)) {
+                collapsed.incrementAndGet();
+                return;
+            }
+            pending.addLast(command);
+        }
+        executor.execute(this::runNext);
+    }
+
+    /**
+     * @return number of commands that were absorbed by a waiting command instead of running.
+     */
+    public long getCollapsed() {
+        return collapsed.get();
+    }
+
+    private void runNext() {
+        Command command;
+        synchronized (pending) {
+            command = pending.pollFirst(); // Once taken, the command can't absorb others anymore.
+        }
+        if (command == null) return;
+        try {
+            command.run();
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "Player command failed", e); // The queue keeps running the next commands.
+        }
+    }
+
+    /**
+     * A player command.
+     */
+    public interface Command extends Runnable {
+        /**
+         * Called while this command is still waiting in the queue and a new command is submitted after it.
+         *
+         * @param later The command submitted after this one.
+         * @return True if this command now also does what the later one would do, so the later one is dropped.
+         */
+        default boolean absorb(Command later) {
+            return false;
+        }
+    }
+}
@@ -5,9 +5,13 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
 
 public final class CustomFileChooser extends JFileChooser {
+    private static final long serialVersionUID = 1L;
+
     public CustomFileChooser() {
-        FileNameExtensionFilter filter = new FileNameExtensionFilter("MP3", "mp3");
-        this.setFileSelectionMode(JFileChooser.FILES_ONLY);
+        FileNameExtensionFilter filter = new FileNameExtensionFilter("MP3 and playlists", "mp3", "m3u", "m3u8",
+                PlaylistFile.EXTENSION.substring(1));
+        this.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        this.setMultiSelectionEnabled(true);
         this.setAcceptAllFileFilterUsed(false);
         this.setFileFilter(filter);
         this.setPreferredSize(new Dimension(700, 550));
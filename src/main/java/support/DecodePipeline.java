@@ -0,0 +1,428 @@
+package support;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decodes frames ahead of playback. A decode thread reads and decodes the bitstream into a bounded ring buffer of PCM
+ * frames, while the playback thread takes the frames and writes them to the AudioDevice. Hiccups in file I/O or
+ * decoding are absorbed by the buffered frames instead of becoming gaps in the audio.
+ * Unless -Dplayer.adaptiveBuffer=false, the depth doubles every time playback waits for the decoder, up to
+ * -Dplayer.maxDecodeAhead=N, and goes back down towards the default after a while without waiting. New pipelines
+ * start with the depth reached by the previous ones, see {@link #getAdaptiveDepth()}.
+ */
+public final class DecodePipeline {
+    /**
+     * Number of decoded frames kept ahead of playback. Can be changed with -Dplayer.decodeAhead=N.
+     */
+    public static final int DEFAULT_DEPTH = Math.max(1, Integer.getInteger("player.decodeAhead", 32));
+
+    /**
+     * Maximum number of decoded frames kept ahead of playback when the depth adapts.
+     */
+    public static final int MAX_DEPTH = Math.max(DEFAULT_DEPTH, Integer.getInteger("player.maxDecodeAhead", 512));
+
+    private static final boolean ADAPTIVE = Boolean.parseBoolean(System.getProperty("player.adaptiveBuffer", "true"));
+    private static final int SHRINK_FRAMES = 2000; // Frames played without waiting before the depth shrinks, ~50 s.
+    private static volatile int adaptiveDepth = DEFAULT_DEPTH; // Depth reached by the last pipeline.
+
+    private static final AtomicLong totalUnderruns = new AtomicLong();
+
+    private final Song song; // Song to open in the decode thread, when no bitstream is given.
+    private Bitstream bitstream; // Only used by the decode thread after start().
+    private final Decoder decoder;
+    private PcmFrame[] frames; // Ring buffer, grows with the depth. Guarded by lock.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Thread decodeThread;
+    private int head = 0; // Index of the oldest decoded frame. Guarded by lock.
+    private int count = 0; // Number of decoded frames in the buffer. Guarded by lock.
+    private int depth; // Maximum number of decoded frames in the buffer. Guarded by lock.
+    private int framesSinceUnderrun = 0; // Guarded by lock.
+    private boolean finished = false; // No more frames will be decoded. Guarded by lock.
+    private boolean closed = false; // Guarded by lock.
+    private boolean started = false; // If the first frame was already taken. Only used by the playback thread.
+    private JavaLayerException failure; // Guarded by lock.
+    private long underruns = 0; // Guarded by lock.
+
+    /**
+     * @param bitstream Bitstream positioned at the first frame to decode. Closed when the pipeline finishes.
+     * @param decoder   Decoder used for the bitstream.
+     * @param depth     Maximum number of decoded frames waiting to be played.
+     */
+    public DecodePipeline(Bitstream bitstream, Decoder decoder, int depth) {
+        this(null, bitstream, decoder, depth);
+    }
+
+    /**
+     * Creates a pipeline that opens the song in the decode thread, so the caller doesn't wait for the file.
+     *
+     * @param song  Song to decode from the first frame.
+     * @param depth Maximum number of decoded frames waiting to be played.
+     */
+    public DecodePipeline(Song song, int depth) {
+        this(song, null, new Decoder(), depth);
+    }
+
+    private DecodePipeline(Song song, Bitstream bitstream, Decoder decoder, int depth) {
+        this.song = song;
+        this.bitstream = bitstream;
+        this.decoder = decoder;
+        this.depth = Math.max(1, depth);
+        this.frames = new PcmFrame[this.depth];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new PcmFrame();
+        }
+        this.decodeThread = new Thread(this::decode, "decode-ahead");
+        this.decodeThread.setDaemon(true);
+    }
+
+    /**
+     * Starts decoding in the background.
+     */
+    public void start() {
+        decodeThread.start();
+    }
+
+    /**
+     * Stops the decode thread. Any thread waiting on {@link #take()} returns null.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return True if the pipeline was closed before the end of the bitstream.
+     */
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return True if the decode thread reached the end of the bitstream (or failed).
+     */
+    public boolean isFinished() {
+        lock.lock();
+        try {
+            return finished;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return True if {@link #take()} would return without waiting for the decode thread.
+     */
+    public boolean isReady() {
+        lock.lock();
+        try {
+            return count > 0 || finished || closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until {@link #isReady()}, without taking a frame. Waiting after the first frame was taken is an underrun.
+     */
+    public void awaitReady() {
+        lock.lock();
+        try {
+            countUnderrun();
+            while (count == 0 && !finished && !closed) {
+                notEmpty.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the next decoded frame. The frame stays owned by the pipeline until {@link #release()} is called,
+     * so it must be written to the device before that.
+     *
+     * @return the next frame or null if there are no more frames or the pipeline was closed.
+     * @throws JavaLayerException If the decode thread failed.
+     */
+    public PcmFrame take() throws JavaLayerException {
+        lock.lock();
+        try {
+            return takeBatch(1) > 0 ? frames[head] : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for the next decoded frame and takes it with the frames already decoded after it, so they can be written
+     * together. Only frames with the same format as the first are taken. The frames stay owned by the pipeline until
+     * {@link #release(int)} is called.
+     *
+     * @param max Maximum number of frames taken.
+     * @return number of frames taken, see {@link #getFrame(int)}, or 0 if there are no more frames or the pipeline
+     * was closed.
+     * @throws JavaLayerException If the decode thread failed.
+     */
+    public int takeBatch(int max) throws JavaLayerException {
+        lock.lock();
+        try {
+            countUnderrun();
+            while (count == 0 && !finished && !closed) {
+                notEmpty.awaitUninterruptibly();
+            }
+            if (closed) return 0;
+            if (count == 0) {
+                if (failure != null) throw failure;
+                return 0;
+            }
+            started = true;
+            PcmFrame first = frames[head];
+            int taken = 1;
+            while (taken < Math.min(max, count)) {
+                PcmFrame frame = frames[(head + taken) % frames.length];
+                if (frame.frequency != first.frequency || frame.channels != first.channels) break;
+                taken++;
+            }
+            return taken;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Counts an underrun if playback caught up with the decoder, and grows the depth. Must hold the lock.
+     */
+    private void countUnderrun() {
+        if (count == 0 && !finished && !closed && started) {
+            underruns++;
+            totalUnderruns.incrementAndGet();
+            if (ADAPTIVE && depth < MAX_DEPTH) setDepth(Math.min(MAX_DEPTH, depth * 2));
+        }
+    }
+
+    /**
+     * @param index Position of the frame in the last batch taken, see {@link #takeBatch(int)}.
+     * @return the frame.
+     */
+    public PcmFrame getFrame(int index) {
+        lock.lock();
+        try {
+            return frames[(head + index) % frames.length];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives back the frame returned by the last {@link #take()}, so it can be reused by the decoder.
+     */
+    public void release() {
+        release(1);
+    }
+
+    /**
+     * Gives back the first frames taken, so they can be reused by the decoder.
+     *
+     * @param taken Number of frames given back.
+     */
+    public void release(int taken) {
+        lock.lock();
+        try {
+            taken = Math.min(taken, count);
+            if (taken > 0) {
+                head = (head + taken) % frames.length;
+                count -= taken;
+                notFull.signal();
+            }
+            framesSinceUnderrun += taken;
+            if (ADAPTIVE && framesSinceUnderrun >= SHRINK_FRAMES && depth > DEFAULT_DEPTH) {
+                setDepth(Math.max(DEFAULT_DEPTH, depth * 3 / 4)); // The frames beyond the new depth are played first.
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the Decoder used by the pipeline.
+     */
+    public Decoder getDecoder() {
+        return decoder;
+    }
+
+    /**
+     * @return the maximum number of decoded frames waiting to be played.
+     */
+    public int getDepth() {
+        lock.lock();
+        try {
+            return depth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the depth new pipelines should start with, the last one reached if it adapts.
+     */
+    public static int getAdaptiveDepth() {
+        return ADAPTIVE ? adaptiveDepth : DEFAULT_DEPTH;
+    }
+
+    /**
+     * @return number of times playback had to wait for the decoder in this pipeline.
+     */
+    public long getUnderruns() {
+        lock.lock();
+        try {
+            return underruns;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of times playback had to wait for the decoder in every pipeline.
+     */
+    public static long getTotalUnderruns() {
+        return totalUnderruns.get();
+    }
+
+    /**
+     * Changes the depth, growing the ring buffer if needed. Must hold the lock.
+     */
+    private void setDepth(int newDepth) {
+        if (newDepth > frames.length) {
+            PcmFrame[] grown = new PcmFrame[newDepth];
+            for (int i = 0; i < frames.length; i++) { // The oldest frame goes first, the taken frame is kept.
+                grown[i] = frames[(head + i) % frames.length];
+            }
+            for (int i = frames.length; i < grown.length; i++) {
+                grown[i] = new PcmFrame();
+            }
+            frames = grown;
+            head = 0;
+        }
+        depth = newDepth;
+        adaptiveDepth = newDepth;
+        framesSinceUnderrun = 0;
+        notFull.signal();
+    }
+
+    private void decode() {
+        try {
+            if (bitstream == null) {
+                try {
+                    bitstream = new Bitstream(song.getInputStream());
+                } catch (IOException e) {
+                    throw new JavaLayerException("Could not open " + song.getFilePath(), e);
+                }
+            }
+            int frame = 0; // Frames decoded by this pipeline.
+            while (true) {
+                PlayerEvents.FrameDecoded event = new PlayerEvents.FrameDecoded();
+                event.begin();
+                long start = System.nanoTime();
+                Header h = bitstream.readFrame();
+                if (h == null) break;
+                SampleBuffer output = (SampleBuffer) decoder.decodeFrame(h, bitstream);
+                bitstream.closeFrame();
+                PlaybackMetrics.frameDecoded(System.nanoTime() - start);
+                event.frame = frame++;
+                event.samples = output.getBufferLength();
+                event.commit();
+
+                lock.lock();
+                try {
+                    while (count >= depth && !closed) {
+                        notFull.awaitUninterruptibly();
+                    }
+                    if (closed) break;
+                    frames[(head + count) % frames.length].set(output);
+                    count++;
+                    notEmpty.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (JavaLayerException e) {
+            lock.lock();
+            try {
+                failure = e;
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            lock.lock();
+            try {
+                finished = true;
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                if (bitstream != null) bitstream.close();
+            } catch (BitstreamException ignored) {
+            }
+        }
+    }
+
+    /**
+     * One decoded frame of PCM samples.
+     */
+    public static final class PcmFrame {
+        private short[] samples = new short[0];
+        private int length = 0;
+        private int frequency = 0;
+        private int channels = 0;
+
+        private void set(SampleBuffer output) {
+            int length = output.getBufferLength();
+            if (samples.length < length) {
+                samples = new short[length];
+            }
+            System.arraycopy(output.getBuffer(), 0, samples, 0, length);
+            this.length = length;
+            this.frequency = output.getSampleFrequency();
+            this.channels = output.getChannelCount();
+        }
+
+        public short[] getSamples() {
+            return samples;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public int getFrequency() {
+            return frequency;
+        }
+
+        public int getChannels() {
+            return channels;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package support;
+
+import javax.swing.SwingWorker;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Imports many files and folders in the background. The folders are walked for MP3 files, M3U and M3U8 playlists are
+ * read one entry at a time, and the files are parsed on a bounded pool of threads. The songs are given to the consumer
+ * in the EDT in batches, in the order of the files, so the queue fills while the import runs. The progress goes from
+ * 0 to 100 and the import can be cancelled.
+ */
+public final class FolderImporter extends SwingWorker<Integer, Song> {
+    /**
+     * Number of files parsed at the same time. Can be changed with -Dplayer.importThreads=N.
+     */
+    public static final int DEFAULT_THREADS = Math.max(1,
+            Integer.getInteger("player.importThreads", Runtime.getRuntime().availableProcessors()));
+
+    private final List<File> roots;
+    private final Consumer<List<Song>> batchConsumer;
+    private final int threads;
+    private final AtomicInteger failures = new AtomicInteger();
+    private final ArrayDeque<Future<Song>> pending = new ArrayDeque<>(); // Taken in the order of the files.
+    private ExecutorService pool;
+    private int expected; // Files expected, to compute the progress.
+    private int done = 0;
+    private int imported = 0;
+
+    /**
+     * @param roots         Files and folders to import.
+     * @param batchConsumer Receives the songs parsed, in the EDT.
+     * @param threads       Number of files parsed at the same time.
+     */
+    public FolderImporter(List<File> roots, Consumer<List<Song>> batchConsumer, int threads) {
+        this.roots = roots;
+        this.batchConsumer = batchConsumer;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @return number of files that could not be parsed.
+     */
+    public int getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * @return number of songs imported.
+     */
+    @Override
+    protected Integer doInBackground() throws IOException, InterruptedException {
+        List<List<Path>> rootFiles = new ArrayList<>(roots.size()); // Null for the playlists, read while importing.
+        int expected = 0;
+        for (File root : roots) {
+            if (root.isFile() && M3uPlaylist.isM3uFile(root.toPath())) {
+                rootFiles.add(null);
+                expected += countLines(root.toPath()); // At most one file per line.
+            } else {
+                List<Path> files = findFiles(root.toPath());
+                rootFiles.add(files);
+                expected += files.size();
+            }
+            if (isCancelled()) return 0;
+        }
+        this.expected = Math.max(1, expected);
+
+        pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "importer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int i = 0; i < roots.size() && !isCancelled(); i++) {
+                List<Path> files = rootFiles.get(i);
+                if (files == null) {
+                    M3uPlaylist.read(roots.get(i).toPath(), file -> { // Parsed while the rest is read, in order.
+                        if (!isCancelled() && isMp3File(file) && Files.isRegularFile(file)) submit(file);
+                    });
+                } else {
+                    for (Path file : files) {
+                        if (isCancelled()) break;
+                        submit(file);
+                    }
+                }
+            }
+            while (!pending.isEmpty() && !isCancelled()) {
+                takeNext();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        if (!isCancelled()) setProgress(100); // The playlists can have lines that are not files.
+        return imported;
+    }
+
+    @Override
+    protected void process(List<Song> songs) {
+        if (!isCancelled()) {
+            batchConsumer.accept(new ArrayList<>(songs));
+        }
+    }
+
+    /**
+     * Parses the file on the pool. Once enough files are waiting, the oldest one is taken first, so a cancel stops
+     * quickly and the songs are published while the files are still being found.
+     */
+    private void submit(Path file) {
+        pending.add(pool.submit(() -> SongLoader.load(file)));
+        if (pending.size() >= threads * 4) {
+            try {
+                takeNext();
+            } catch (InterruptedException e) { // Cancelled, the files left are skipped.
+                Thread.currentThread().interrupt();
+                cancel(false);
+            }
+        }
+    }
+
+    private void takeNext() throws InterruptedException {
+        Song song = take(pending.poll());
+        done++;
+        if (song != null) {
+            publish(song);
+            imported++;
+        }
+        setProgress(Math.min(99, done * 100 / expected));
+    }
+
+    private static List<Path> findFiles(Path folder) throws IOException {
+        try (Stream<Path> paths = Files.walk(folder)) {
+            return paths.filter(FolderImporter::isMp3File)
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static int countLines(Path file) throws IOException {
+        int lines = 1;
+        byte[] buffer = new byte[8192];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') lines++;
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static boolean isMp3File(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".mp3");
+    }
+
+    /**
+     * @return the song parsed, or null if the file could not be parsed.
+     */
+    private Song take(Future<Song> parsed) throws InterruptedException {
+        try {
+            return parsed.get();
+        } catch (ExecutionException e) {
+            failures.incrementAndGet(); // Not an MP3 file, or a broken one. The others are still imported.
+            return null;
+        }
+    }
+}
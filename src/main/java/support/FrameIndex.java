@@ -0,0 +1,245 @@
+package support;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Maps MP3 frame numbers to byte offsets in the file, so the player can seek straight to a frame instead of reading
+ * and discarding every frame before it.
+ */
+public final class FrameIndex {
+    private static final int[][] BITRATES_MPEG1 = {
+            {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448}, // Layer I
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},    // Layer II
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320}      // Layer III
+    };
+    private static final int[][] BITRATES_MPEG2 = {
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},    // Layer I
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160},         // Layer II
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}          // Layer III
+    };
+    private static final int[][] SAMPLE_RATES = {
+            {11025, 12000, 8000},  // MPEG 2.5
+            {0, 0, 0},             // Reserved
+            {22050, 24000, 16000}, // MPEG 2
+            {44100, 48000, 32000}  // MPEG 1
+    };
+
+    /**
+     * Single background thread used to build the indexes, so adding songs never waits for a full file scan.
+     */
+    private static final ExecutorService indexer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "frame-indexer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int[] offsets; // offsets[i] is the position of frame i, offsets[numFrames] is the end of the audio.
+    private final int numFrames;
+    private final float msPerFrame;
+
+    private FrameIndex(int[] offsets, int numFrames, float msPerFrame) {
+        this.offsets = offsets;
+        this.numFrames = numFrames;
+        this.msPerFrame = msPerFrame;
+    }
+
+    /**
+     * Builds the index of the file in the background.
+     *
+     * @param filePath File path.
+     * @return future completed with the index of the file.
+     */
+    public static CompletableFuture<FrameIndex> buildAsync(String filePath) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return build(filePath);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, indexer);
+    }
+
+    /**
+     * Scans the headers of every frame in the file. Only the 4 bytes of each header are read, the audio data is not
+     * decoded.
+     *
+     * @param filePath File path.
+     * @return the index of the file.
+     */
+    public static FrameIndex build(String filePath) throws IOException {
+        ByteBuffer buffer = Song.map(filePath); // Not kept by the song, it is only needed while scanning.
+        int limit = buffer.limit();
+        int position = skipId3v2Tag(buffer);
+        int[] offsets = new int[Math.max(16, limit / 400)];
+        int numFrames = 0;
+        int firstHeader = 0;
+        float msPerFrame = 0;
+        int end = position; // End of the last frame, tags and junk after it are not audio.
+
+        while (position + 4 <= limit) {
+            int header = buffer.getInt(position);
+            int frameSize = frameSize(header);
+            boolean valid = frameSize > 0 && position + frameSize <= limit;
+            if (valid && numFrames == 0) {
+                // The first frame must be followed by another one, otherwise it is just junk that looks like a header.
+                int next = position + frameSize;
+                valid = next + 4 > limit || frameSize(buffer.getInt(next)) > 0;
+            } else if (valid) {
+                valid = sameStream(header, firstHeader);
+            }
+            if (!valid) { // Lost sync, try the next byte.
+                position++;
+                continue;
+            }
+            if (numFrames == 0) {
+                firstHeader = header;
+                msPerFrame = samplesPerFrame(header) * 1000f / sampleRate(header);
+            }
+            if (numFrames + 1 >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[numFrames++] = position;
+            position += frameSize;
+            end = position;
+        }
+        offsets[numFrames] = end;
+        return new FrameIndex(Arrays.copyOf(offsets, numFrames + 1), numFrames, msPerFrame);
+    }
+
+    /**
+     * @return number of frames in the file.
+     */
+    public int getNumFrames() {
+        return numFrames;
+    }
+
+    /**
+     * @return number of milliseconds per frame.
+     */
+    public float getMsPerFrame() {
+        return msPerFrame;
+    }
+
+    /**
+     * @param frame Frame number. Values after the last frame return the end of the audio data.
+     * @return the byte offset where the frame starts in the file.
+     */
+    public int getOffset(int frame) {
+        return offsets[Math.max(0, Math.min(frame, numFrames))];
+    }
+
+    /**
+     * @param frame Frame number.
+     * @return the time where the frame starts in milliseconds.
+     */
+    public int getMs(int frame) {
+        return (int) (frame * msPerFrame);
+    }
+
+    /**
+     * @param ms Time in milliseconds.
+     * @return the frame playing at the given time.
+     */
+    public int getFrameAt(int ms) {
+        if (msPerFrame <= 0) return 0;
+        return Math.max(0, Math.min((int) (ms / msPerFrame), numFrames));
+    }
+
+    /**
+     * @return the position after the ID3v2 tag at the start of the file, or 0 if there is no tag.
+     */
+    static int skipId3v2Tag(ByteBuffer buffer) {
+        return Math.min(buffer.limit(), id3v2TagSize(buffer));
+    }
+
+    /**
+     * @param header At least the first 10 bytes of the file.
+     * @return the size of the ID3v2 tag at the start of the file, including its header and footer, or 0 if there is
+     *         no tag.
+     */
+    static int id3v2TagSize(ByteBuffer header) {
+        if (header.limit() < 10 || header.get(0) != 'I' || header.get(1) != 'D' || header.get(2) != '3') return 0;
+        int size = (header.get(6) & 0x7F) << 21 | (header.get(7) & 0x7F) << 14
+                | (header.get(8) & 0x7F) << 7 | (header.get(9) & 0x7F);
+        boolean hasFooter = (header.get(5) & 0x10) != 0;
+        return 10 + size + (hasFooter ? 10 : 0);
+    }
+
+    /**
+     * Finds the first frame: a valid header followed by another valid header.
+     *
+     * @param buffer   Mapped file, or the part of it read after the ID3v2 tag.
+     * @param position Where to start looking.
+     * @return the position of the first frame, or -1 if there are no frames.
+     */
+    static int findFirstFrame(ByteBuffer buffer, int position) {
+        int limit = buffer.limit();
+        for (; position + 4 <= limit; position++) {
+            int frameSize = frameSize(buffer.getInt(position));
+            if (frameSize <= 0 || position + frameSize > limit) continue;
+            int next = position + frameSize;
+            if (next + 4 > limit || frameSize(buffer.getInt(next)) > 0) return position;
+        }
+        return -1;
+    }
+
+    private static boolean sameStream(int header, int firstHeader) {
+        // Version, layer and sample rate never change inside a stream.
+        return (header & 0xFFFE0C00) == (firstHeader & 0xFFFE0C00);
+    }
+
+    /**
+     * @param header The 4 bytes of the frame header.
+     * @return the size of the frame in bytes, including the header, or 0 if the header is not valid.
+     */
+    static int frameSize(int header) {
+        if ((header >>> 21) != 0x7FF) return 0;
+        int version = (header >>> 19) & 3;
+        int layer = (header >>> 17) & 3;
+        int bitrateIndex = (header >>> 12) & 0xF;
+        int sampleRateIndex = (header >>> 10) & 3;
+        if (version == 1 || layer == 0 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) return 0;
+
+        int bitrate = bitrate(header) * 1000;
+        int sampleRate = sampleRate(header);
+        int padding = (header >>> 9) & 1;
+        if (layer == 3) return (12 * bitrate / sampleRate + padding) * 4; // Layer I
+        return samplesPerFrame(header) / 8 * bitrate / sampleRate + padding;
+    }
+
+    /**
+     * @param header The 4 bytes of a valid frame header.
+     * @return the bitrate of the frame in kbps.
+     */
+    static int bitrate(int header) {
+        int version = (header >>> 19) & 3;
+        int layer = (header >>> 17) & 3;
+        int[][] table = version == 3 ? BITRATES_MPEG1 : BITRATES_MPEG2;
+        return table[3 - layer][(header >>> 12) & 0xF];
+    }
+
+    /**
+     * @param header The 4 bytes of a valid frame header.
+     * @return the sample rate of the frame in Hz.
+     */
+    static int sampleRate(int header) {
+        return SAMPLE_RATES[(header >>> 19) & 3][(header >>> 10) & 3];
+    }
+
+    /**
+     * @param header The 4 bytes of a valid frame header.
+     * @return the number of samples per channel in the frame.
+     */
+    static int samplesPerFrame(int header) {
+        int version = (header >>> 19) & 3;
+        int layer = (header >>> 17) & 3;
+        if (layer == 3) return 384; // Layer I
+        if (layer == 1 && version != 3) return 576; // Layer III on MPEG 2 and 2.5
+        return 1152;
+    }
+}
@@ -0,0 +1,131 @@
+package support;
+
+import javax.management.ConstructorParameters;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds, cheap enough to record every frame. Each power of two is split in 4 buckets,
+ * so percentiles are within 25% of the real value. Can be recorded from any thread without locking.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKETS = 4;
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos Duration measured.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0; // System.nanoTime() is monotonic, but be safe.
+        counts.incrementAndGet(bucket(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        if (nanos > max.get()) max.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * @return number of durations recorded.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Forgets every duration recorded.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * @return the durations recorded so far. Durations recorded while it is taken may be missing from some values.
+     */
+    public Snapshot snapshot() {
+        long total = count.get();
+        if (total == 0) return new Snapshot(0, 0, 0, 0, 0);
+        return new Snapshot(total, sum.get() / total / 1000, percentile(total, 0.5) / 1000,
+                percentile(total, 0.99) / 1000, max.get() / 1000);
+    }
+
+    /**
+     * @return the upper bound of the bucket with the given fraction of the durations below it.
+     */
+    private long percentile(long total, double fraction) {
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(lowerBound(i + 1) - 1, max.get());
+        }
+        return max.get();
+    }
+
+    private static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos); // At least 2.
+        int sub = (int) (nanos >>> (exponent - 2)) & (SUB_BUCKETS - 1); // The 2 bits after the highest one.
+        return (exponent - 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + 1;
+        if (exponent >= 63) return Long.MAX_VALUE;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 2);
+    }
+
+    /**
+     * Summary of the durations recorded, in microseconds.
+     */
+    public static final class Snapshot {
+        private final long count;
+        private final long meanMicros;
+        private final long p50Micros;
+        private final long p99Micros;
+        private final long maxMicros;
+
+        @ConstructorParameters({"count", "meanMicros", "p50Micros", "p99Micros", "maxMicros"})
+        public Snapshot(long count, long meanMicros, long p50Micros, long p99Micros, long maxMicros) {
+            this.count = count;
+            this.meanMicros = meanMicros;
+            this.p50Micros = p50Micros;
+            this.p99Micros = p99Micros;
+            this.maxMicros = maxMicros;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMeanMicros() {
+            return meanMicros;
+        }
+
+        public long getP50Micros() {
+            return p50Micros;
+        }
+
+        public long getP99Micros() {
+            return p99Micros;
+        }
+
+        public long getMaxMicros() {
+            return maxMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + " mean=" + meanMicros + "us p50=" + p50Micros + "us p99=" + p99Micros
+                    + "us max=" + maxMicros + "us";
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package support;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Length of an MP3 file read only from the headers around its first frame, without scanning the other frames.
+ * The number of frames comes from the Xing/Info (LAME) or VBRI header when the encoder wrote one, otherwise it is
+ * estimated from the bitrate of the first frame, which is exact for CBR files.
+ */
+public final class LengthEstimate {
+    /**
+     * Bytes read after the ID3v2 tag to find the first frame and its VBR header. Doubled while no frame is found.
+     */
+    private static final int PROBE_BYTES = 16 * 1024;
+
+    private final int numFrames;
+    private final float msPerFrame;
+    private final boolean fromVbrHeader;
+
+    private LengthEstimate(int numFrames, float msPerFrame, boolean fromVbrHeader) {
+        this.numFrames = numFrames;
+        this.msPerFrame = msPerFrame;
+        this.fromVbrHeader = fromVbrHeader;
+    }
+
+    /**
+     * Only the headers are read, with positional reads into small buffers: the start of the file, a window after the
+     * ID3v2 tag and the ID3v1 tag at the end.
+     *
+     * @param filePath File path.
+     * @return the estimated length of the file.
+     * @throws IOException If the file can't be read or has no MP3 frames.
+     */
+    public static LengthEstimate read(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = Math.min(size, FrameIndex.id3v2TagSize(read(channel, 0, 10)));
+            ByteBuffer window;
+            int first;
+            for (int length = PROBE_BYTES; ; length *= 2) { // Junk between the tag and the first frame is rare.
+                window = read(channel, start, length);
+                first = FrameIndex.findFirstFrame(window, 0);
+                if (first >= 0 || start + window.limit() >= size || length > Integer.MAX_VALUE / 2) break;
+            }
+            if (first < 0) throw new IOException("No MP3 frames in " + filePath);
+
+            int header = window.getInt(first);
+            float msPerFrame = FrameIndex.samplesPerFrame(header) * 1000f / FrameIndex.sampleRate(header);
+            int vbrFrames = vbrHeaderFrames(window, first, header);
+            if (vbrFrames > 0) {
+                return new LengthEstimate(vbrFrames, msPerFrame, true);
+            }
+
+            long end = size;
+            if (end - 128 >= start + first && isTag(read(channel, end - 128, 3), 0, "TAG")) {
+                end -= 128; // ID3v1 tag.
+            }
+            float bytesPerFrame = FrameIndex.samplesPerFrame(header) / 8f * FrameIndex.bitrate(header) * 1000
+                    / FrameIndex.sampleRate(header);
+            return new LengthEstimate(Math.max(1, Math.round((end - start - first) / bytesPerFrame)), msPerFrame,
+                    false);
+        }
+    }
+
+    /**
+     * @return up to {@code length} bytes of the file from the position, fewer if the file ends before.
+     */
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(length, channel.size() - position)));
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+            // Positional reads don't move the channel, keep reading until the buffer is full.
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * @return the number of frames in the file.
+     */
+    public int getNumFrames() {
+        return numFrames;
+    }
+
+    /**
+     * @return number of milliseconds per frame.
+     */
+    public float getMsPerFrame() {
+        return msPerFrame;
+    }
+
+    /**
+     * @return the length in milliseconds.
+     */
+    public float getMsLength() {
+        return numFrames * msPerFrame;
+    }
+
+    /**
+     * @return True if the number of frames was written by the encoder, False if it was estimated from the bitrate.
+     */
+    public boolean isFromVbrHeader() {
+        return fromVbrHeader;
+    }
+
+    /**
+     * @return the number of frames in the Xing/Info or VBRI header of the first frame, or 0 if there is none.
+     */
+    private static int vbrHeaderFrames(ByteBuffer buffer, int first, int header) {
+        boolean mpeg1 = ((header >>> 19) & 3) == 3;
+        boolean mono = ((header >>> 6) & 3) == 3;
+        boolean crc = ((header >>> 16) & 1) == 0; // The protection bit is 0 when a 16-bit CRC follows the header.
+        int xing = first + 4 + (crc ? 2 : 0) + (mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17)); // After the side info.
+        if (xing + 12 <= buffer.limit() && (isTag(buffer, xing, "Xing") || isTag(buffer, xing, "Info"))) {
+            int flags = buffer.getInt(xing + 4);
+            return (flags & 1) != 0 ? buffer.getInt(xing + 8) : 0;
+        }
+        int vbri = first + 4 + 32; // Always 32 bytes after the header.
+        if (vbri + 18 <= buffer.limit() && isTag(buffer, vbri, "VBRI")) {
+            return buffer.getInt(vbri + 14);
+        }
+        return 0;
+    }
+
+    private static boolean isTag(ByteBuffer buffer, int position, String tag) {
+        for (int i = 0; i < tag.length(); i++) {
+            if (buffer.get(position + i) != tag.charAt(i)) return false;
+        }
+        return true;
+    }
+}
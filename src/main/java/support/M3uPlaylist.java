@@ -0,0 +1,89 @@
+package support;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Reads and writes M3U and M3U8 playlists one line at a time, so big playlists are never held in memory as text.
+ * Both are read and written as UTF-8, old M3U files in other encodings only lose their non-ASCII characters.
+ */
+public final class M3uPlaylist {
+    private M3uPlaylist() {
+    }
+
+    /**
+     * @param file File to check.
+     * @return True if the file has the extension of an M3U or M3U8 playlist.
+     */
+    public static boolean isM3uFile(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".m3u") || name.endsWith(".m3u8");
+    }
+
+    /**
+     * Gives every file of the playlist to the consumer, in order. Relative paths are resolved against the folder
+     * of the playlist, comments and entries that are not local files are skipped.
+     *
+     * @param playlist M3U or M3U8 file.
+     * @param files    Receives the path of each entry.
+     */
+    public static void read(Path playlist, Consumer<Path> files) throws IOException {
+        Path folder = playlist.toAbsolutePath().getParent();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(playlist), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.strip();
+                if (!line.isEmpty() && line.charAt(0) == '\uFEFF') line = line.substring(1).strip(); // BOM.
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                Path file = toPath(line);
+                if (file != null) {
+                    files.accept(folder.resolve(file));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the songs as an extended M3U playlist, with absolute paths.
+     *
+     * @param songs    Songs in the order they play.
+     * @param playlist M3U or M3U8 file.
+     */
+    public static void write(Iterable<Song> songs, Path playlist) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(playlist), StandardCharsets.UTF_8))) {
+            writer.write("#EXTM3U");
+            writer.newLine();
+            for (Song song : songs) {
+                writer.write("#EXTINF:" + Math.round(song.getMsLength() / 1000) + "," + song.getArtist() + " - "
+                        + song.getTitle());
+                writer.newLine();
+                writer.write(Path.of(song.getFilePath()).toAbsolutePath().toString());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * @return the path of the entry, or null if it is a URL that is not a local file or an invalid path.
+     */
+    private static Path toPath(String entry) {
+        try {
+            if (entry.startsWith("file:")) return Path.of(URI.create(entry));
+            if (entry.matches("^[a-zA-Z][a-zA-Z0-9+.-]+://.*")) return null; // Streams, e.g. http://.
+            return Path.of(entry);
+        } catch (IllegalArgumentException e) { // Also InvalidPathException.
+            return null;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package support;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * InputStream over a view of a memory-mapped file. Reads come straight from the page cache, without system calls.
+ */
+final class MappedInputStream extends InputStream {
+    private final ByteBuffer buffer;
+    private boolean closed = false;
+
+    /**
+     * @param mapping  Mapped file. Only a view of it is used, so the mapping can be shared by many streams.
+     * @param position Byte offset where the stream starts.
+     */
+    MappedInputStream(ByteBuffer mapping, int position) {
+        this.buffer = mapping.duplicate();
+        this.buffer.position(Math.min(position, buffer.limit()));
+        OpenResources.streamOpened();
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) return 0;
+        if (!buffer.hasRemaining()) return -1;
+        int count = Math.min(len, buffer.remaining());
+        buffer.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) {
+        int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        buffer.mark();
+    }
+
+    @Override
+    public synchronized void reset() {
+        buffer.reset();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        OpenResources.streamClosed();
+    }
+}
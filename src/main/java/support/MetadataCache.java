@@ -0,0 +1,246 @@
+package support;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache on disk of the information parsed from MP3 files, so adding a known file again doesn't scan it.
+ * The entries are keyed by path and only used while the size and modification time of the file are the same.
+ * The cache file is a log of binary records, new records are appended and replace older records of the same path.
+ * The log is rewritten without the replaced records when they are more than the valid ones, on load and while the
+ * cache is used, so the log stays under twice the size of the entries.
+ */
+public final class MetadataCache {
+    private static final Logger LOG = Logger.getLogger(MetadataCache.class.getName());
+
+    /**
+     * File of the cache. Can be changed with -Dplayer.metadataCache=PATH, an empty path disables the cache.
+     */
+    public static final String DEFAULT_PATH = System.getProperty("player.metadataCache",
+            Path.of(System.getProperty("user.home"), ".music-player", "metadata.cache").toString());
+
+    private static final int MAGIC = 0x4D504333; // "MPC3", older logs are discarded.
+    private static final int MAX_STRING = 1 << 20; // Longer lengths are from a damaged record.
+    private static MetadataCache defaultCache;
+
+    private final Path file; // Null if the cache is only in memory.
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private DataOutputStream log; // Guarded by this.
+    private int records = 0; // Records in the log, including the replaced ones. Guarded by this.
+
+    /**
+     * @param file Cache file, created if it doesn't exist, or null to keep the cache only in memory.
+     */
+    public MetadataCache(Path file) {
+        this.file = file;
+        if (file != null) {
+            load();
+        }
+    }
+
+    /**
+     * @return the cache in {@link #DEFAULT_PATH}.
+     */
+    public static synchronized MetadataCache getDefault() {
+        if (defaultCache == null) {
+            defaultCache = new MetadataCache(DEFAULT_PATH.isEmpty() ? null : Path.of(DEFAULT_PATH));
+        }
+        return defaultCache;
+    }
+
+    /**
+     * @param file MP3 file.
+     * @return a new song with the cached information of the file, or null if the file is not cached or changed.
+     */
+    public Song get(Path file) throws IOException {
+        String key = file.toAbsolutePath().toString();
+        Entry entry = entries.get(key);
+        if (entry == null) return null;
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        if (attributes.size() != entry.size || attributes.lastModifiedTime().toMillis() != entry.modified) {
+            entries.remove(key, entry); // Stale, the file will be parsed and cached again.
+            return null;
+        }
+        Song song = new Song(UUID.randomUUID().toString(), entry.title, entry.album, entry.artist, entry.year,
+                entry.strLength, entry.msLength, file.toString(), (int) entry.size, entry.numFrames, entry.msPerFrame);
+        song.setLengthExact(entry.lengthExact);
+        return song;
+    }
+
+    /**
+     * Caches the information of a song.
+     *
+     * @param song Song parsed from its file.
+     */
+    public void put(Song song) throws IOException {
+        Path path = Path.of(song.getFilePath());
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        Entry entry = new Entry(path.toAbsolutePath().toString(), attributes.size(),
+                attributes.lastModifiedTime().toMillis(), song.getTitle(), song.getAlbum(), song.getArtist(),
+                song.getYear(), song.getStrLength(), song.getMsLength(), song.getNumFrames(), song.getMsPerFrame(),
+                song.isLengthExact());
+        entries.put(entry.path, entry);
+        if (file == null) return;
+        synchronized (this) {
+            if (log == null) {
+                log = openLog();
+            }
+            entry.write(log);
+            log.flush();
+            records++;
+            if (records > entries.size() * 2) { // Most records were replaced, e.g. by the lengths refined later.
+                log.close();
+                log = null; // Opened again on the next put, after the rewritten log.
+                compact();
+            }
+        }
+    }
+
+    /**
+     * @return number of files in the cache.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Reads the log. A record cut in the middle, by a crash while writing, ends the log and the log is rewritten.
+     */
+    private synchronized void load() {
+        boolean damaged = true;
+        if (Files.isRegularFile(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() == MAGIC) {
+                    while (true) {
+                        in.mark(1);
+                        if (in.read() < 0) break; // End of the last record.
+                        in.reset();
+                        Entry entry = Entry.read(in);
+                        entries.put(entry.path, entry);
+                        records++;
+                    }
+                    damaged = false;
+                }
+            } catch (IOException e) {
+                // Starts with the entries read until the error.
+                LOG.log(Level.WARNING, "Metadata cache damaged: " + file, e);
+            }
+        }
+        if (damaged || records > entries.size() * 2) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the log with only the current entries. Must hold this.
+     */
+    private void compact() {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                for (Entry entry : entries.values()) {
+                    entry.write(out);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            records = entries.size();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Metadata cache not saved: " + file, e); // The cache still works in memory.
+        }
+    }
+
+    private DataOutputStream openLog() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        boolean isNew = !Files.exists(file);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        if (isNew) {
+            out.writeInt(MAGIC);
+        }
+        return out;
+    }
+
+    private static final class Entry {
+        private final String path;
+        private final long size;
+        private final long modified;
+        private final String title;
+        private final String album;
+        private final String artist;
+        private final String year;
+        private final String strLength;
+        private final float msLength;
+        private final int numFrames;
+        private final float msPerFrame;
+        private final boolean lengthExact;
+
+        private Entry(String path, long size, long modified, String title, String album, String artist, String year,
+                      String strLength, float msLength, int numFrames, float msPerFrame, boolean lengthExact) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.title = title;
+            this.album = album;
+            this.artist = artist;
+            this.year = year;
+            this.strLength = strLength;
+            this.msLength = msLength;
+            this.numFrames = numFrames;
+            this.msPerFrame = msPerFrame;
+            this.lengthExact = lengthExact;
+        }
+
+        private static Entry read(DataInputStream in) throws IOException {
+            return new Entry(readString(in), in.readLong(), in.readLong(), readString(in), readString(in),
+                    readString(in), readString(in), readString(in), in.readFloat(), in.readInt(), in.readFloat(),
+                    in.readBoolean());
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            writeString(out, path);
+            out.writeLong(size);
+            out.writeLong(modified);
+            writeString(out, title);
+            writeString(out, album);
+            writeString(out, artist);
+            writeString(out, year);
+            writeString(out, strLength);
+            out.writeFloat(msLength);
+            out.writeInt(numFrames);
+            out.writeFloat(msPerFrame);
+            out.writeBoolean(lengthExact);
+        }
+
+        /**
+         * UTF-8 bytes after their length as an int. writeUTF is limited to 65535 bytes, which a tag can exceed.
+         */
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if (length < 0 || length > MAX_STRING) throw new IOException("Damaged record, string of " + length);
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
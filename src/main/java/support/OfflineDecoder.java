@@ -0,0 +1,149 @@
+package support;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+import javazoom.jl.player.AudioDevice;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Decodes a whole file as fast as the CPU allows, with the same Bitstream and Decoder used by the player, and
+ * measures how long it took. Used with a {@link CaptureAudioDevice} to run without a sound card.
+ */
+public final class OfflineDecoder {
+    private OfflineDecoder() {
+    }
+
+    /**
+     * Decodes every frame of the file into the device. The device is opened and closed by this method.
+     *
+     * @param filePath File path.
+     * @param device   Device that receives the samples.
+     * @return the time taken and the amount of audio decoded.
+     */
+    public static Report decode(String filePath, CaptureAudioDevice device) throws JavaLayerException {
+        Decoder decoder = new Decoder();
+        Bitstream bitstream;
+        try {
+            bitstream = new Bitstream(new MappedInputStream(Song.map(filePath), 0));
+        } catch (IOException e) {
+            throw new JavaLayerException("Could not open " + filePath, e);
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long cpuStart = threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+        long start = System.nanoTime();
+        int frames = 0;
+        device.open(decoder);
+        try {
+            frames = decode(bitstream, decoder, device);
+        } finally {
+            device.close();
+            try {
+                bitstream.close();
+            } catch (BitstreamException ignored) {
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        long cpuEnd = cpuStart >= 0 ? threads.getCurrentThreadCpuTime() : -1;
+        long cpuNanos = cpuStart >= 0 && cpuEnd >= 0 ? cpuEnd - cpuStart : nanos; // Wall time if not measured.
+        return new Report(filePath, frames, device.getSamples(), device.getFrequency(), device.getChannels(), nanos,
+                cpuNanos);
+    }
+
+    private static int decode(Bitstream bitstream, Decoder decoder, AudioDevice device) throws JavaLayerException {
+        int frames = 0;
+        while (true) {
+            Header h = bitstream.readFrame();
+            if (h == null) return frames;
+            SampleBuffer output = (SampleBuffer) decoder.decodeFrame(h, bitstream);
+            device.write(output.getBuffer(), 0, output.getBufferLength());
+            bitstream.closeFrame();
+            frames++;
+        }
+    }
+
+    /**
+     * Result of decoding one file.
+     */
+    public static final class Report {
+        private final String filePath;
+        private final int frames;
+        private final long samples;
+        private final int frequency;
+        private final int channels;
+        private final long nanos;
+        private final long cpuNanos;
+
+        private Report(String filePath, int frames, long samples, int frequency, int channels, long nanos,
+                       long cpuNanos) {
+            this.filePath = filePath;
+            this.frames = frames;
+            this.samples = samples;
+            this.frequency = frequency;
+            this.channels = channels;
+            this.nanos = nanos;
+            this.cpuNanos = cpuNanos;
+        }
+
+        public String getFilePath() {
+            return filePath;
+        }
+
+        /**
+         * @return number of frames decoded.
+         */
+        public int getFrames() {
+            return frames;
+        }
+
+        /**
+         * @return time taken to decode, in nanoseconds.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return CPU time of the thread that decoded the file, in nanoseconds. Unlike {@link #getNanos()}, it doesn't
+         * count the time the thread waited for a core.
+         */
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        /**
+         * @return length of the audio decoded in seconds.
+         */
+        public double getAudioSeconds() {
+            if (frequency == 0) return 0;
+            return (double) samples / ((long) frequency * channels);
+        }
+
+        /**
+         * @return number of frames decoded per second.
+         */
+        public double getFramesPerSecond() {
+            return nanos > 0 ? frames * 1e9 / nanos : 0;
+        }
+
+        /**
+         * @return how many times faster than real time the file was decoded.
+         */
+        public double getRealTimeFactor() {
+            return nanos > 0 ? getAudioSeconds() * 1e9 / nanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d frames in %.1f ms, %.0f frames/s, %.1fx real time",
+                    filePath, frames, nanos / 1e6, getFramesPerSecond(), getRealTimeFactor());
+        }
+    }
+}
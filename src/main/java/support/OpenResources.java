@@ -0,0 +1,44 @@
+package support;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the file streams and audio lines that are currently open, so leaks can be watched during a session.
+ */
+public final class OpenResources {
+    private static final AtomicInteger streams = new AtomicInteger();
+    private static final AtomicInteger lines = new AtomicInteger();
+
+    private OpenResources() {
+    }
+
+    static void streamOpened() {
+        streams.incrementAndGet();
+    }
+
+    static void streamClosed() {
+        streams.decrementAndGet();
+    }
+
+    static void lineOpened() {
+        lines.incrementAndGet();
+    }
+
+    static void lineClosed() {
+        lines.decrementAndGet();
+    }
+
+    /**
+     * @return number of song file streams currently open.
+     */
+    public static int getOpenStreams() {
+        return streams.get();
+    }
+
+    /**
+     * @return number of audio lines currently open.
+     */
+    public static int getOpenLines() {
+        return lines.get();
+    }
+}
@@ -0,0 +1,202 @@
+package support;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counters and latency histograms of the playback engine, to find out why playback stutters. Recording only reads
+ * the clock and increments a few atomic counters, so it is done on every frame.
+ * The metrics are published through JMX by {@link #register()}. With -Dplayer.metricsFile=FILE they are also appended
+ * to the file every -Dplayer.metricsInterval=SECONDS (10 by default), one line each time.
+ */
+public final class PlaybackMetrics implements PlaybackMetricsMXBean {
+    private static final Logger LOG = Logger.getLogger(PlaybackMetrics.class.getName());
+
+    private static final String METRICS_FILE = System.getProperty("player.metricsFile", "");
+    private static final long METRICS_INTERVAL = Math.max(1, Long.getLong("player.metricsInterval", 10));
+    private static final PlaybackMetrics INSTANCE = new PlaybackMetrics();
+
+    private static final LatencyHistogram decodeTime = new LatencyHistogram();
+    private static final LatencyHistogram writeLatency = new LatencyHistogram();
+    private static final LatencyHistogram seekTime = new LatencyHistogram();
+    private static final LatencyHistogram trackSwitchTime = new LatencyHistogram();
+    private static final LongAdder framesWritten = new LongAdder();
+    private static final LongAdder framesSkipped = new LongAdder();
+    private static final AtomicLong underrunsAtReset = new AtomicLong(); // Underruns are counted by DecodePipeline.
+    private static final AtomicLong lineUnderrunsAtReset = new AtomicLong(); // And by SessionAudioDevice.
+
+    private static boolean registered = false; // Guarded by PlaybackMetrics.class.
+
+    private PlaybackMetrics() {
+    }
+
+    /**
+     * Publishes the metrics through JMX and starts the periodic dump if a file was given. Only done once.
+     */
+    public static synchronized void register() {
+        if (registered) return;
+        registered = true;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE,
+                    new ObjectName("musicplayer:type=PlaybackMetrics"));
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+        if (!METRICS_FILE.isEmpty()) {
+            ScheduledExecutorService dumps = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "metrics-dump");
+                thread.setDaemon(true);
+                return thread;
+            });
+            Path file = Path.of(METRICS_FILE);
+            dumps.scheduleAtFixedRate(() -> dump(file), METRICS_INTERVAL, METRICS_INTERVAL, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @param nanos Time to read and decode a frame.
+     */
+    public static void frameDecoded(long nanos) {
+        decodeTime.record(nanos);
+    }
+
+    /**
+     * @param frames Number of frames written with a single write.
+     * @param nanos  Time the write to the device took.
+     */
+    public static void framesWritten(int frames, long nanos) {
+        writeLatency.record(nanos);
+        framesWritten.add(frames);
+    }
+
+    /**
+     * Counts a frame read without decoding it.
+     */
+    public static void frameSkipped() {
+        framesSkipped.increment();
+    }
+
+    /**
+     * @param nanos Time the seek took.
+     */
+    public static void seekDone(long nanos) {
+        seekTime.record(nanos);
+    }
+
+    /**
+     * @param nanos Time the change of song took.
+     */
+    public static void trackSwitched(long nanos) {
+        trackSwitchTime.record(nanos);
+    }
+
+    /**
+     * Appends the current metrics to the file, as a single line.
+     */
+    private static void dump(Path file) {
+        String line = Instant.now() + " framesDecoded=" + INSTANCE.getFramesDecoded()
+                + " framesWritten=" + INSTANCE.getFramesWritten()
+                + " framesSkipped=" + INSTANCE.getFramesSkipped()
+                + " underruns=" + INSTANCE.getUnderruns()
+                + " lineUnderruns=" + INSTANCE.getLineUnderruns()
+                + " decodeAheadDepth=" + INSTANCE.getDecodeAheadDepth()
+                + " openStreams=" + INSTANCE.getOpenStreams()
+                + " openLines=" + INSTANCE.getOpenLines()
+                + " decodeTime=[" + INSTANCE.getDecodeTime() + "]"
+                + " writeLatency=[" + INSTANCE.getWriteLatency() + "]"
+                + " seekTime=[" + INSTANCE.getSeekTime() + "]"
+                + " trackSwitchTime=[" + INSTANCE.getTrackSwitchTime() + "]"
+                + System.lineSeparator();
+        try {
+            Files.writeString(file, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Metrics not written: " + file, e); // Tries again on the next dump.
+        }
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getDecodeTime() {
+        return decodeTime.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getWriteLatency() {
+        return writeLatency.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getSeekTime() {
+        return seekTime.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getTrackSwitchTime() {
+        return trackSwitchTime.snapshot();
+    }
+
+    @Override
+    public long getFramesDecoded() {
+        return decodeTime.getCount();
+    }
+
+    @Override
+    public long getFramesWritten() {
+        return framesWritten.sum();
+    }
+
+    @Override
+    public long getFramesSkipped() {
+        return framesSkipped.sum();
+    }
+
+    @Override
+    public long getUnderruns() {
+        return DecodePipeline.getTotalUnderruns() - underrunsAtReset.get();
+    }
+
+    @Override
+    public long getLineUnderruns() {
+        return SessionAudioDevice.getUnderruns() - lineUnderrunsAtReset.get();
+    }
+
+    @Override
+    public int getDecodeAheadDepth() {
+        return DecodePipeline.getAdaptiveDepth();
+    }
+
+    @Override
+    public int getOpenStreams() {
+        return OpenResources.getOpenStreams();
+    }
+
+    @Override
+    public int getOpenLines() {
+        return OpenResources.getOpenLines();
+    }
+
+    @Override
+    public void reset() {
+        decodeTime.reset();
+        writeLatency.reset();
+        seekTime.reset();
+        trackSwitchTime.reset();
+        framesWritten.reset();
+        framesSkipped.reset();
+        underrunsAtReset.set(DecodePipeline.getTotalUnderruns());
+        lineUnderrunsAtReset.set(SessionAudioDevice.getUnderruns());
+    }
+}
@@ -0,0 +1,61 @@
+package support;
+
+/**
+ * Metrics of the playback engine, published through JMX as musicplayer:type=PlaybackMetrics.
+ * Durations are in microseconds.
+ */
+public interface PlaybackMetricsMXBean {
+    /**
+     * @return time to read and decode each frame, in the decode threads.
+     */
+    LatencyHistogram.Snapshot getDecodeTime();
+
+    /**
+     * @return time each write to the audio device blocked, mostly waiting for room in the line. A write can have
+     * many frames, see -Dplayer.writeBatch.
+     */
+    LatencyHistogram.Snapshot getWriteLatency();
+
+    /**
+     * @return time to move the current song to the time chosen in the scrubber.
+     */
+    LatencyHistogram.Snapshot getSeekTime();
+
+    /**
+     * @return time to open the next song, or to wait for its first frame when it was decoded ahead.
+     */
+    LatencyHistogram.Snapshot getTrackSwitchTime();
+
+    long getFramesDecoded();
+
+    long getFramesWritten();
+
+    /**
+     * @return frames read without decoding them, to seek in songs that are not indexed yet.
+     */
+    long getFramesSkipped();
+
+    /**
+     * @return number of times playback had to wait for the decoder.
+     */
+    long getUnderruns();
+
+    /**
+     * @return number of times the audio line ran out of audio while playing.
+     */
+    long getLineUnderruns();
+
+    /**
+     * @return number of frames new decode pipelines keep ahead of playback.
+     */
+    int getDecodeAheadDepth();
+
+    int getOpenStreams();
+
+    int getOpenLines();
+
+    /**
+     * Starts counting again from zero.
+     */
+    void reset();
+}
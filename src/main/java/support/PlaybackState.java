@@ -0,0 +1,23 @@
+package support;
+
+/**
+ * States of the playback thread.
+ */
+public enum PlaybackState {
+    /**
+     * Frames are being decoded and written to the device.
+     */
+    PLAYING,
+    /**
+     * The playback thread is parked, keeping the position and the decoded frames.
+     */
+    PAUSED,
+    /**
+     * The playback thread is parked while the song or the position changes.
+     */
+    SEEKING,
+    /**
+     * Nothing is playing.
+     */
+    STOPPED
+}
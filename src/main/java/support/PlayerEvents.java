@@ -0,0 +1,121 @@
+package support;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events of the player, so a recording shows what the player was doing next to GC pauses and
+ * I/O stalls. Nothing is recorded unless a recording is running, e.g. with -XX:StartFlightRecording.
+ * Events that happen on every frame don't take a stack trace.
+ */
+public final class PlayerEvents {
+    private static final String CATEGORY = "Music Player";
+
+    private PlayerEvents() {
+    }
+
+    @Name("musicplayer.FrameDecoded")
+    @Label("Frame Decoded")
+    @Description("A frame read and decoded by a decode thread")
+    @Category({CATEGORY, "Playback"})
+    @StackTrace(false)
+    public static final class FrameDecoded extends Event {
+        @Label("Frame")
+        @Description("Position of the frame from where the pipeline started")
+        public int frame;
+
+        @Label("Samples")
+        public int samples;
+    }
+
+    @Name("musicplayer.SeekRequested")
+    @Label("Seek Requested")
+    @Description("The scrubber was released, the seek waits for the commands before it")
+    @Category({CATEGORY, "Playback"})
+    public static final class SeekRequested extends Event {
+        @Label("Target")
+        @Timespan(Timespan.MILLISECONDS)
+        public long target;
+    }
+
+    @Name("musicplayer.SeekCompleted")
+    @Label("Seek Completed")
+    @Description("The current song was moved to a new time")
+    @Category({CATEGORY, "Playback"})
+    public static final class SeekCompleted extends Event {
+        @Label("Target")
+        @Timespan(Timespan.MILLISECONDS)
+        public long target;
+
+        @Label("Frame")
+        public int frame;
+
+        @Label("Frames Skipped")
+        @Description("Frames read one by one because the frames of the song were not indexed yet")
+        public int framesSkipped;
+    }
+
+    @Name("musicplayer.TrackStarted")
+    @Label("Track Started")
+    @Category({CATEGORY, "Playback"})
+    public static final class TrackStarted extends Event {
+        @Label("Title")
+        public String title;
+
+        @Label("Path")
+        public String path;
+
+        @Label("Gapless")
+        @Description("The song was decoded ahead and started where the previous one ended")
+        public boolean gapless;
+    }
+
+    @Name("musicplayer.TrackEnded")
+    @Label("Track Ended")
+    @Category({CATEGORY, "Playback"})
+    public static final class TrackEnded extends Event {
+        @Label("Title")
+        public String title;
+
+        @Label("Path")
+        public String path;
+
+        @Label("Frame")
+        @Description("Last frame played")
+        public int frame;
+
+        @Label("Reason")
+        @Description("Finished, Changed, Stopped or Failed")
+        public String reason;
+    }
+
+    @Name("musicplayer.QueueMutated")
+    @Label("Queue Mutated")
+    @Category({CATEGORY, "Queue"})
+    public static final class QueueMutated extends Event {
+        @Label("Operation")
+        public String operation;
+
+        @Label("Songs")
+        @Description("Songs added or removed")
+        public int songs;
+
+        @Label("Queue Size")
+        public int queueSize;
+    }
+
+    @Name("musicplayer.UiUpdatePublished")
+    @Label("UI Update Published")
+    @Description("An update of the window, from when it was posted to the EDT until it was done")
+    @Category({CATEGORY, "UI"})
+    @StackTrace(false)
+    public static final class UiUpdatePublished extends Event {
+        @Label("Update")
+        public String update;
+    }
+}
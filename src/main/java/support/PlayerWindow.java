@@ -5,9 +5,12 @@ import com.mpatric.mp3agic.*;
 import javazoom.jl.decoder.BitstreamException;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.MouseInputAdapter;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableRowSorter;
 import javax.swing.text.PlainDocument;
 import java.awt.*;
 import java.awt.event.ActionListener;
@@ -15,20 +18,30 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.Duration;
-import java.util.UUID;
+import java.util.List;
 
 public class PlayerWindow {
-    private final String[] columnTitles = new String[]{"Title", "Album", "Artist", "Year", "Length", "Path"};
     public final int BUTTON_ICON_PLAY = 0;
     public final int BUTTON_ICON_PAUSE = 1;
+    /**
+     * Interval between updates of the time labels and scrubber. Can be changed with -Dplayer.uiRefreshMs=N.
+     */
+    public static final int DEFAULT_TIME_REFRESH_MS = Math.max(10, Integer.getInteger("player.uiRefreshMs", 100));
+    private static final long NO_TIME = -1L;
 
     private final JFrame window = new JFrame();
     private final JPanel queuePanel;
     private final JTable queueList;
+    private final QueueTableModel queueModel;
+    private final TableRowSorter<QueueTableModel> queueSorter;
+    private final JTextField searchField;
     private final JButton playNowButton;
     private final JButton removeSongButton;
     private final JButton addSongButton;
+    private final JButton savePlaylistButton;
+    private final JProgressBar importProgressBar;
+    private final JButton cancelImportButton;
+    private FolderImporter currentImport; // Only used in the EDT.
 
     private final JPanel miniPlayerPanel;
     private final JLabel miniPlayerSongInfo;
@@ -50,12 +63,23 @@ public class PlayerWindow {
     private final ImageIcon iconShuffle;
     private final ImageIcon iconStop;
 
+    /*
+     * Time published by the playback thread and applied on the EDT by the timer.
+     * The current time is in the upper 32 bits and the total time in the lower 32 bits.
+     */
+    private volatile long publishedTime = NO_TIME;
+    private long shownTime = NO_TIME; // Only used in the EDT.
+    private final StringBuilder timeText = new StringBuilder(16); // Reused to format the times. Only used in the EDT.
+    private final Timer timeRefreshTimer;
+
     /**
      * @param windowTitle               String to be used as the window title.
-     * @param queueArray                String[][] with the queue. The array should contain in each position one array
+     * @param store                     Store of the songs in the queue.
+     * @param queue                     Records of the songs in the queue, in the order they play.
      * @param buttonListenerPlayNow     ActionListener for the "Play Now" button.
      * @param buttonListenerRemove      ActionListener for the "Remove" button.
      * @param buttonListenerAddSong     ActionListener for the "Add Song" button.
+     * @param buttonListenerSavePlaylist ActionListener for the "Save playlist" button.
      * @param buttonListenerShuffle     ActionListener for the "Shuffle" button.
      * @param buttonListenerPrevious    ActionListener for the "Previous" button.
      * @param buttonListenerPlayPause   ActionListener for the "Play/Pause" button.
@@ -66,10 +90,12 @@ public class PlayerWindow {
      */
     public PlayerWindow(
             String windowTitle,
-            String[][] queueArray,
+            SongStore store,
+            int[] queue,
             ActionListener buttonListenerPlayNow,
             ActionListener buttonListenerRemove,
             ActionListener buttonListenerAddSong,
+            ActionListener buttonListenerSavePlaylist,
             ActionListener buttonListenerShuffle,
             ActionListener buttonListenerPrevious,
             ActionListener buttonListenerPlayPause,
@@ -130,20 +156,47 @@ public class PlayerWindow {
         JPanel queuePanelButtons = new JPanel();
         JScrollPane queueListPane = new JScrollPane();
 
+        queueModel = new QueueTableModel(store, queue);
         queueList = new JTable();
 
         queuePanel.setLayout(new BorderLayout());
         queueListPane.setViewportView(queueList);
-        setQueueList(queueArray);
+        queueSorter = fillQueueTable(queueList, queueModel);
+        searchField = new JTextField();
+        searchField.putClientProperty("JTextField.placeholderText", "Search title, album, artist or year");
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {filterQueueList();}
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {filterQueueList();}
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {filterQueueList();}
+        });
+        queuePanel.add(searchField, BorderLayout.PAGE_START);
         queuePanelButtons.setLayout(new BoxLayout(queuePanelButtons, BoxLayout.X_AXIS));
         queuePanelButtons.setBorder(BorderFactory.createEmptyBorder(5, 0, 0, 0));
         playNowButton = new JButton("Play Now");
         removeSongButton = new JButton("Remove");
         addSongButton = new JButton("Add song...");
+        savePlaylistButton = new JButton("Save playlist...");
+        importProgressBar = new JProgressBar(0, 100);
+        cancelImportButton = new JButton("Cancel import");
+        importProgressBar.setStringPainted(true);
+        importProgressBar.setMaximumSize(new Dimension(200, importProgressBar.getPreferredSize().height));
+        importProgressBar.setVisible(false);
+        cancelImportButton.setVisible(false);
         queuePanelButtons.add(playNowButton);
         queuePanelButtons.add(Box.createRigidArea(new Dimension(5, 0)));
         queuePanelButtons.add(removeSongButton);
         queuePanelButtons.add(Box.createHorizontalGlue());
+        queuePanelButtons.add(importProgressBar);
+        queuePanelButtons.add(Box.createRigidArea(new Dimension(5, 0)));
+        queuePanelButtons.add(cancelImportButton);
+        queuePanelButtons.add(Box.createRigidArea(new Dimension(5, 0)));
+        queuePanelButtons.add(savePlaylistButton);
+        queuePanelButtons.add(Box.createRigidArea(new Dimension(5, 0)));
         queuePanelButtons.add(addSongButton);
         playNowButton.setEnabled(false);
         removeSongButton.setEnabled(false);
@@ -153,6 +206,19 @@ public class PlayerWindow {
         playNowButton.addActionListener(buttonListenerPlayNow);
         removeSongButton.addActionListener(buttonListenerRemove);
         addSongButton.addActionListener(buttonListenerAddSong);
+        savePlaylistButton.addActionListener(buttonListenerSavePlaylist);
+        cancelImportButton.addActionListener(e -> {
+            if (currentImport != null) currentImport.cancel(true);
+        });
+        queueList.getSelectionModel().addListSelectionListener(e -> {
+            if (queueList.getSelectionModel().isSelectionEmpty()) {
+                playNowButton.setEnabled(false);
+                removeSongButton.setEnabled(false);
+            } else {
+                playNowButton.setEnabled(true);
+                removeSongButton.setEnabled(true);
+            }
+        });
         //</editor-fold>
 
         //<editor-fold desc="Mini-player Panel">
@@ -268,14 +334,103 @@ public class PlayerWindow {
         mainPanel.add(miniPlayerPanel);
         window.add(mainPanel);
         window.setVisible(true);
+
+        timeRefreshTimer = new Timer(DEFAULT_TIME_REFRESH_MS, e -> refreshTime());
+        timeRefreshTimer.setCoalesce(true);
+        timeRefreshTimer.start();
+    }
+
+    /**
+     * Adds a song to the end of the queue list. Should be called whenever a song is added.
+     *
+     * @param song Song added.
+     */
+    public void addToQueueList(Song song) {
+        queueModel.add(song);
+    }
+
+    /**
+     * Removes a song from the queue list. Should be called whenever a song is removed.
+     *
+     * @param index Position of the song in the queue.
+     */
+    public void removeFromQueueList(int index) {
+        queueModel.remove(index);
+    }
+
+    /**
+     * Shows the current information of a song in the queue list. Should be called whenever a song changes.
+     *
+     * @param index Position of the song in the queue.
+     */
+    public void updateInQueueList(int index) {
+        queueModel.update(index);
+    }
+
+    /**
+     * Adds songs to the end of the queue list, as a single change to the table.
+     *
+     * @param songs Songs added.
+     */
+    public void addToQueueList(List<Song> songs) {
+        queueModel.addAll(songs);
+    }
+
+    /**
+     * Shows the progress of an import until it is done, with a button to cancel it, and the number of files that
+     * could not be imported.
+     *
+     * @param importer Import that was not started yet.
+     */
+    public void showImportProgress(FolderImporter importer) {
+        currentImport = importer;
+        importProgressBar.setValue(0);
+        importProgressBar.setVisible(true);
+        cancelImportButton.setVisible(true);
+        importer.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) {
+                int failures = importer.getFailures();
+                importProgressBar.setValue((Integer) e.getNewValue());
+                importProgressBar.setString(failures == 0 ? null : e.getNewValue() + "% (" + failures + " failed)");
+            } else if (importer.isDone() && currentImport == importer) {
+                currentImport = null;
+                importProgressBar.setVisible(false);
+                importProgressBar.setString(null); // Back to the percentage for the next import.
+                cancelImportButton.setVisible(false);
+                int failures = importer.getFailures();
+                if (failures > 0 && !importer.isCancelled()) {
+                    JOptionPane.showMessageDialog(this.window, failures + (failures == 1 ? " file" : " files")
+                            + " could not be imported, they are not MP3 files or are damaged.", "Import",
+                            JOptionPane.WARNING_MESSAGE);
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets the songs displayed in the queue list. Should be called whenever the order of the queue changes.
+     *
+     * @param queue Records of the songs in the queue, in the order they play.
+     */
+    public void setQueueList(int[] queue) {
+        queueModel.setRecords(queue);
+    }
+
+    /**
+     * Shows only the songs with the words in the search field, or every song if it is empty.
+     */
+    private void filterQueueList() {
+        queueSorter.setRowFilter(queueModel.filter(searchField.getText()));
     }
 
     /**
-     * Sets the information to be displayed in the queue list. Should be called whenever a song is added or removed.
+     * Sets the model and the columns of the queue table. Only done once, the model notifies the table of changes.
      *
-     * @param queueArray String[][] with the queue. The array should contain in each position one Song converted to array.
+     * @param queueList  Queue table.
+     * @param queueModel Model of the queue.
+     * @return the sorter of the table, used to sort and filter the rows.
      */
-    public void setQueueList(String[][] queueArray) {
+    static TableRowSorter<QueueTableModel> fillQueueTable(JTable queueList, QueueTableModel queueModel) {
         queueList.setShowHorizontalLines(true);
         queueList.setDragEnabled(false);
         queueList.setColumnSelectionAllowed(false);
@@ -283,21 +438,7 @@ public class PlayerWindow {
         queueList.getTableHeader().setResizingAllowed(false);
         queueList.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
         queueList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        queueList.setModel(new DefaultTableModel(queueArray, columnTitles) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        });
-        queueList.getSelectionModel().addListSelectionListener(e -> {
-            if (queueList.getSelectionModel().isSelectionEmpty()) {
-                playNowButton.setEnabled(false);
-                removeSongButton.setEnabled(false);
-            } else {
-                playNowButton.setEnabled(true);
-                removeSongButton.setEnabled(true);
-            }
-        });
+        queueList.setModel(queueModel);
         ((DefaultTableCellRenderer) queueList.getTableHeader().getDefaultRenderer())
                 .setHorizontalAlignment(JLabel.LEFT);
         queueList.getColumnModel().getColumn(0).setMinWidth(180);
@@ -312,6 +453,9 @@ public class PlayerWindow {
         queueList.getColumnModel().getColumn(3).setPreferredWidth(70);
         queueList.getColumnModel().getColumn(4).setPreferredWidth(60);
         queueList.getColumnModel().getColumn(5).setPreferredWidth(0);
+        TableRowSorter<QueueTableModel> sorter = new QueueRowSorter(queueModel);
+        queueList.setRowSorter(sorter);
+        return sorter;
     }
 
     /**
@@ -416,10 +560,59 @@ public class PlayerWindow {
         miniPlayerScrubber.setValue(currentTime);
     }
 
+    /**
+     * Publishes the playback position to be shown on the next refresh of the mini-player. Can be called from any
+     * thread as often as needed, it doesn't touch Swing components nor allocate.
+     *
+     * @param currentTime Current time of the current song in milliseconds.
+     * @param totalTime   Total time of the current song in milliseconds.
+     */
+    public void publishTime(int currentTime, int totalTime) {
+        publishedTime = ((long) currentTime << 32) | (totalTime & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Changes how often the published time is shown in the mini-player.
+     *
+     * @param milliseconds Interval between updates.
+     */
+    public void setTimeRefreshInterval(int milliseconds) {
+        timeRefreshTimer.setDelay(Math.max(10, milliseconds));
+    }
+
+    /**
+     * Applies the published time to the mini-player. Labels are only changed when their text changes.
+     */
+    private void refreshTime() {
+        long time = publishedTime;
+        if (time == NO_TIME || time == shownTime) return;
+        int currentTime = (int) (time >> 32);
+        int totalTime = (int) time;
+        shownTime = time;
+
+        timeText.setLength(0);
+        SecondsToString.appendCurrentTime(timeText, currentTime / 1000, totalTime / 1000);
+        if (!miniPlayerCurrentTime.getText().contentEquals(timeText)) {
+            miniPlayerCurrentTime.setText(timeText.toString());
+        }
+        timeText.setLength(0);
+        SecondsToString.appendLength(timeText, totalTime / 1000);
+        if (!miniPlayerTotalTime.getText().contentEquals(timeText)) {
+            miniPlayerTotalTime.setText(timeText.toString());
+        }
+        if (miniPlayerScrubber.getMaximum() != totalTime) {
+            miniPlayerScrubber.setMaximum(totalTime);
+        }
+        if (miniPlayerScrubber.getValue() != currentTime) {
+            miniPlayerScrubber.setValue(currentTime);
+        }
+    }
+
     /**
      * Resets mini-player to default values and disables buttons. Should be called whenever the 'stop' button is pressed.
      */
     public void resetMiniPlayer() {
+        publishedTime = NO_TIME;
         miniPlayerCurrentTime.setText("- - : - -");
         miniPlayerTotalTime.setText("- - : - -");
         miniPlayerSongInfo.setText("");
@@ -433,11 +626,22 @@ public class PlayerWindow {
     }
 
     /**
-     * @return the ID of the selected song in the queue. Should be called whenever the 'Play Now' and 'Remove'
+     * Tells the user that something failed. Should be called from the event dispatch thread.
+     *
+     * @param message What failed.
+     * @param cause   Error that caused it, its message is shown under the message.
+     */
+    public void showError(String message, Exception cause) {
+        JOptionPane.showMessageDialog(this.window, message + "\n" + cause.getMessage(), "Error",
+                JOptionPane.ERROR_MESSAGE);
+    }
+
+    /**
+     * @return the selected song in the queue. Should be called whenever the 'Play Now' and 'Remove'
      * buttons are pressed.
      */
-    public String getSelectedSong() {
-        return String.valueOf((queueList.getValueAt(queueList.getSelectedRow(), 5)));
+    public Song getSelectedSong() {
+        return queueModel.getSong(queueList.convertRowIndexToModel(queueList.getSelectedRow()));
     }
 
     /**
@@ -450,146 +654,144 @@ public class PlayerWindow {
     }
 
     /**
-     * Opens a file chooser and returns a Song object with information parsed from the file.
-     * If information can't be parsed from the file a dialog is open to input song info.
+     * Opens a file chooser where MP3 files and folders can be selected.
      *
-     * @return chosen MP3 or Null if cancelled.
+     * @return chosen files and folders, empty if cancelled.
      */
-    public Song openFileChooser() throws IOException, BitstreamException, UnsupportedTagException, InvalidDataException {
+    public File[] openFileChooser() {
         CustomFileChooser fileChooser = new CustomFileChooser();
         fileChooser.setCurrentDirectory(new File
                 (System.getProperty("user.home") + System.getProperty("file.separator") + "Downloads"));
         int fileChooserReturnValue = fileChooser.showOpenDialog(this.window);
 
         if (fileChooserReturnValue == JFileChooser.APPROVE_OPTION) {
-            File file = fileChooser.getSelectedFile();
-            String title = "";
-            String album = "";
-            String artist = "";
-            String year = "";
-            float msLength;
-            String strLength;
-            String filePath = file.getPath();
-            int fileSize = (int) Files.size(Path.of(filePath));
-            int numFrames;
-            float msPerFrame;
-            int frameSize;
-
-            // Try to get ID3 info
-            Mp3File mp3File = new Mp3File(file);
-            if (mp3File.hasId3v1Tag()) {
-                ID3v1 id3 = mp3File.getId3v1Tag();
-                title = id3.getTitle();
-                album = id3.getAlbum();
-                artist = id3.getArtist();
-                year = id3.getYear();
-            } else if (mp3File.hasId3v2Tag()) {
-                ID3v2 id3 = mp3File.getId3v2Tag();
-                title = id3.getTitle();
-                album = id3.getAlbum();
-                artist = id3.getArtist();
-                year = id3.getYear();
-            }
-            if (title == null || title.isBlank() || album == null || album.isBlank() || artist == null || artist.isBlank() || year == null || year.isBlank()) {
-                JPanel songInfoPanel = new JPanel();
-
-                JPanel messagePanel = new JPanel();
-                JPanel songTitlePanel = new JPanel();
-                JPanel songAlbumPanel = new JPanel();
-                JPanel songArtistPanel = new JPanel();
-                JPanel songYearPanel = new JPanel();
-
-                String message = "<html><body>Some ID3 tags could not be parsed from this file.<br>Would you like to fill in the fields bellow?</body></html>";
-                JLabel messageLabel = new JLabel(message);
-                JLabel songTitleLabel = new JLabel("Title:");
-                JLabel songAlbumLabel = new JLabel("Album:");
-                JLabel songArtistLabel = new JLabel("Artist:");
-                JLabel songYearLabel = new JLabel("Year:");
-
-                JTextField songTitleField = new JTextField();
-                JTextField songAlbumField = new JTextField();
-                JTextField songArtistField = new JTextField();
-                JTextField songYearField = new JTextField();
-                PlainDocument yearDocument = (PlainDocument) songYearField.getDocument();
-                yearDocument.setDocumentFilter(new YearDocumentFilter());
-
-                songInfoPanel.setLayout(new GridLayout(5, 1));
-                songInfoPanel.add(messagePanel);
-                songInfoPanel.add(songTitlePanel);
-                songInfoPanel.add(songAlbumPanel);
-                songInfoPanel.add(songArtistPanel);
-                songInfoPanel.add(songYearPanel);
-
-                messagePanel.setLayout(new GridLayout(1, 1));
-                messagePanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 3, 0));
-                messagePanel.add(messageLabel);
-
-                songTitlePanel.setLayout(new GridLayout(2, 1));
-                songTitlePanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 3, 0));
-                songTitlePanel.add(songTitleLabel);
-                songTitlePanel.add(songTitleField);
-
-                songAlbumPanel.setLayout(new GridLayout(2, 1));
-                songAlbumPanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 3, 0));
-                songAlbumPanel.add(songAlbumLabel);
-                songAlbumPanel.add(songAlbumField);
-
-                songArtistPanel.setLayout(new GridLayout(2, 1));
-                songArtistPanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 3, 0));
-                songArtistPanel.add(songArtistLabel);
-                songArtistPanel.add(songArtistField);
-
-                songYearPanel.setLayout(new GridLayout(2, 1));
-                songYearPanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 3, 0));
-                songYearPanel.add(songYearLabel);
-                songYearPanel.add(songYearField);
-
-                if (title != null && !title.isBlank()) {
-                    songTitleField.setText(title);
-                    songTitleField.setEditable(false);
-                }
-                if (album != null && !album.isBlank()) {
-                    songAlbumField.setText(album);
-                    songAlbumField.setEditable(false);
-                }
-                if (artist != null && !artist.isBlank()) {
-                    songArtistField.setText(artist);
-                    songArtistField.setEditable(false);
-                }
-                if (year != null && !year.isBlank()) {
-                    songYearField.setText(year);
-                    songYearField.setEditable(false);
-                }
-
-                int result = JOptionPane.showConfirmDialog(this.window, songInfoPanel,
-                        "Add song info", JOptionPane.OK_CANCEL_OPTION);
-                if (result == JOptionPane.OK_OPTION) {
-                    title = songTitleField.getText();
-                    album = songAlbumField.getText();
-                    artist = songArtistField.getText();
-                    year = songYearField.getText();
-                }
-            }
+            return fileChooser.getSelectedFiles();
+        } else {
+            return new File[0];
+        }
+    }
 
-            numFrames = mp3File.getFrameCount();
-            msLength = mp3File.getLengthInMilliseconds();
-            msPerFrame = msLength / numFrames;
+    /**
+     * Opens a file chooser where the file to save the queue can be chosen. Files without the extension of an M3U or
+     * M3U8 playlist are saved as a {@link PlaylistFile}.
+     *
+     * @return chosen file, or null if cancelled.
+     */
+    public Path openSaveChooser() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Playlists", "m3u", "m3u8", PlaylistFile.EXTENSION.substring(1)));
+        fileChooser.setCurrentDirectory(new File
+                (System.getProperty("user.home") + System.getProperty("file.separator") + "Music"));
+        fileChooser.setPreferredSize(new Dimension(700, 550));
+        if (fileChooser.showSaveDialog(this.window) != JFileChooser.APPROVE_OPTION) return null;
 
-            Duration duration = Duration.ofMillis((long) msLength);
-            long HH = duration.toHours();
-            long MM = duration.toMinutesPart();
-            long SS = duration.toSecondsPart();
-            strLength = String.format("%d:%02d:%02d", HH, MM, SS);
+        Path file = fileChooser.getSelectedFile().toPath();
+        if (!M3uPlaylist.isM3uFile(file) && !PlaylistFile.isPlaylistFile(file)) {
+            file = file.resolveSibling(file.getFileName() + PlaylistFile.EXTENSION);
+        }
+        return file;
+    }
 
-            if (title == null || title.isBlank()) title = "Untitled";
-            if (album == null || album.isBlank()) album = "Untitled";
-            if (artist == null || artist.isBlank()) artist = "Unknown";
-            if (year == null || year.isBlank()) year = "Unknown";
+    /**
+     * Returns a Song object with information parsed from the file, or from the {@link MetadataCache} if the file
+     * was parsed before.
+     * If information can't be parsed from the file a dialog is open to input song info.
+     *
+     * @param file MP3 file.
+     * @return the song of the file.
+     */
+    public Song readSong(File file) throws IOException, BitstreamException, UnsupportedTagException, InvalidDataException {
+        Song cachedSong = MetadataCache.getDefault().get(file.toPath());
+        if (cachedSong != null) return cachedSong;
+
+        Mp3File mp3File = SongLoader.open(file.toPath());
+        String[] tags = SongLoader.readTags(mp3File);
+        String title = tags[0];
+        String album = tags[1];
+        String artist = tags[2];
+        String year = tags[3];
+
+        if (title == null || title.isBlank() || album == null || album.isBlank() || artist == null || artist.isBlank() || year == null || year.isBlank()) {
+            JPanel songInfoPanel = new JPanel();
+
+            JPanel messagePanel = new JPanel();
+            JPanel songTitlePanel = new JPanel();
+            JPanel songAlbumPanel = new JPanel();
+            JPanel songArtistPanel = new JPanel();
+            JPanel songYearPanel = new JPanel();
+
+            String message = "<html><body>Some ID3 tags could not be parsed from this file.<br>Would you like to fill in the fields bellow?</body></html>";
+            JLabel messageLabel = new JLabel(message);
+            JLabel songTitleLabel = new JLabel("Title:");
+            JLabel songAlbumLabel = new JLabel("Album:");
+            JLabel songArtistLabel = new JLabel("Artist:");
+            JLabel songYearLabel = new JLabel("Year:");
+
+            JTextField songTitleField = new JTextField();
+            JTextField songAlbumField = new JTextField();
+            JTextField songArtistField = new JTextField();
+            JTextField songYearField = new JTextField();
+            PlainDocument yearDocument = (PlainDocument) songYearField.getDocument();
+            yearDocument.setDocumentFilter(new YearDocumentFilter());
+
+            songInfoPanel.setLayout(new GridLayout(5, 1));
+            songInfoPanel.add(messagePanel);
+            songInfoPanel.add(songTitlePanel);
+            songInfoPanel.add(songAlbumPanel);
+            songInfoPanel.add(songArtistPanel);
+            songInfoPanel.add(songYearPanel);
+
+            messagePanel.setLayout(new GridLayout(1, 1));
+            messagePanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 3, 0));
+            messagePanel.add(messageLabel);
+
+            songTitlePanel.setLayout(new GridLayout(2, 1));
+            songTitlePanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 3, 0));
+            songTitlePanel.add(songTitleLabel);
+            songTitlePanel.add(songTitleField);
+
+            songAlbumPanel.setLayout(new GridLayout(2, 1));
+            songAlbumPanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 3, 0));
+            songAlbumPanel.add(songAlbumLabel);
+            songAlbumPanel.add(songAlbumField);
+
+            songArtistPanel.setLayout(new GridLayout(2, 1));
+            songArtistPanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 3, 0));
+            songArtistPanel.add(songArtistLabel);
+            songArtistPanel.add(songArtistField);
+
+            songYearPanel.setLayout(new GridLayout(2, 1));
+            songYearPanel.setBorder(BorderFactory.createEmptyBorder(0, 0, 3, 0));
+            songYearPanel.add(songYearLabel);
+            songYearPanel.add(songYearField);
+
+            if (title != null && !title.isBlank()) {
+                songTitleField.setText(title);
+                songTitleField.setEditable(false);
+            }
+            if (album != null && !album.isBlank()) {
+                songAlbumField.setText(album);
+                songAlbumField.setEditable(false);
+            }
+            if (artist != null && !artist.isBlank()) {
+                songArtistField.setText(artist);
+                songArtistField.setEditable(false);
+            }
+            if (year != null && !year.isBlank()) {
+                songYearField.setText(year);
+                songYearField.setEditable(false);
+            }
 
-            String uuid = UUID.randomUUID().toString();
-            return new Song(uuid, title, album, artist, year, strLength, msLength, filePath, fileSize, numFrames, msPerFrame);
-        } else {
-            return null;
+            int result = JOptionPane.showConfirmDialog(this.window, songInfoPanel,
+                    "Add song info", JOptionPane.OK_CANCEL_OPTION);
+            if (result == JOptionPane.OK_OPTION) {
+                title = songTitleField.getText();
+                album = songAlbumField.getText();
+                artist = songArtistField.getText();
+                year = songYearField.getText();
+            }
         }
+
+        return SongLoader.create(file.toPath(), title, album, artist, year);
     }
 }
@@ -0,0 +1,171 @@
+package support;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Binary file of a queue, with the information of every song so loading it doesn't read the MP3 files.
+ * The file starts with the magic number and the version, followed by a dictionary of every distinct string and the
+ * songs, which only keep the position of their strings in the dictionary. Albums, artists, years, lengths and folders
+ * repeat a lot, so they are stored and decoded once. The file is read memory-mapped.
+ */
+public final class PlaylistFile {
+    /**
+     * Extension of the playlist files.
+     */
+    public static final String EXTENSION = ".playlist";
+
+    private static final int MAGIC = 0x4D504C53; // "MPLS"
+    private static final int VERSION = 1;
+    private static final int ENTRY_BYTES = 7 * 4 + 4 + 4 + 4 + 4 + 1; // Strings, lengths, size and if it is exact.
+
+    private PlaylistFile() {
+    }
+
+    /**
+     * @param file File to check.
+     * @return True if the file has the extension of the playlist files.
+     */
+    public static boolean isPlaylistFile(Path file) {
+        return file.getFileName().toString().endsWith(EXTENSION);
+    }
+
+    /**
+     * Saves the songs, replacing the file only after the whole playlist was written.
+     *
+     * @param songs Songs in the order they play.
+     * @param file  Playlist file.
+     */
+    public static void save(List<Song> songs, Path file) throws IOException {
+        HashMap<String, Integer> positions = new HashMap<>(); // Position of each string in the dictionary.
+        List<String> dictionary = new ArrayList<>();
+        int[] entries = new int[songs.size() * 7];
+        for (int i = 0; i < songs.size(); i++) {
+            Song song = songs.get(i);
+            String path = new File(song.getFilePath()).getAbsolutePath();
+            int name = path.lastIndexOf(File.separatorChar) + 1; // The folder keeps its separator.
+            String[] strings = {song.getTitle(), song.getAlbum(), song.getArtist(), song.getYear(), song.getStrLength(),
+                    path.substring(0, name), path.substring(name)};
+            for (int j = 0; j < strings.length; j++) {
+                Integer position = positions.get(strings[j]);
+                if (position == null) {
+                    position = dictionary.size();
+                    positions.put(strings[j], position);
+                    dictionary.add(strings[j]);
+                }
+                entries[i * 7 + j] = position;
+            }
+        }
+
+        byte[][] encoded = new byte[dictionary.size()][];
+        int length = 16 + songs.size() * ENTRY_BYTES;
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = dictionary.get(i).getBytes(StandardCharsets.UTF_8);
+            length += 4 + encoded[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length); // The whole file is written with a single call.
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(encoded.length);
+        for (byte[] bytes : encoded) {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+        buffer.putInt(songs.size());
+        for (int i = 0; i < songs.size(); i++) {
+            Song song = songs.get(i);
+            for (int j = 0; j < 7; j++) {
+                buffer.putInt(entries[i * 7 + j]);
+            }
+            buffer.putFloat(song.getMsLength());
+            buffer.putInt(song.getFileSize());
+            buffer.putInt(song.getNumFrames());
+            buffer.putFloat(song.getMsPerFrame());
+            buffer.put((byte) (song.isLengthExact() ? 1 : 0));
+        }
+        buffer.flip();
+
+        Path absolute = file.toAbsolutePath();
+        Files.createDirectories(absolute.getParent());
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param file Playlist file.
+     * @return new songs, with new IDs, in the order they were saved.
+     * @throws IOException If the file can't be read, is not a playlist or is from a newer version.
+     */
+    public static List<Song> load(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC) throw new IOException("Not a playlist file: " + file);
+            int version = buffer.getInt();
+            if (version > VERSION) throw new IOException("Unsupported playlist version " + version + ": " + file);
+
+            String[] dictionary = new String[checkCount(buffer.getInt(), buffer)];
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < dictionary.length; i++) {
+                int length = buffer.getInt();
+                if (length > bytes.length) bytes = new byte[Math.max(length, bytes.length * 2)];
+                buffer.get(bytes, 0, length);
+                dictionary[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+
+            int size = checkCount(buffer.getInt(), buffer);
+            List<Song> songs = new ArrayList<>(size);
+            UUID ids = UUID.randomUUID(); // The songs only need different IDs, one random UUID is much faster.
+            for (int i = 0; i < size; i++) {
+                String title = dictionary[buffer.getInt()];
+                String album = dictionary[buffer.getInt()];
+                String artist = dictionary[buffer.getInt()];
+                String year = dictionary[buffer.getInt()];
+                String strLength = dictionary[buffer.getInt()];
+                String folder = dictionary[buffer.getInt()];
+                String fileName = dictionary[buffer.getInt()];
+                float msLength = buffer.getFloat();
+                int fileSize = buffer.getInt();
+                int numFrames = buffer.getInt();
+                float msPerFrame = buffer.getFloat();
+                boolean lengthExact = buffer.get() != 0;
+
+                String uuid = new UUID(ids.getMostSignificantBits(), ids.getLeastSignificantBits() + i).toString();
+                Song song = new Song(uuid, title, album, artist, year, strLength, msLength, folder + fileName,
+                        fileSize, numFrames, msPerFrame);
+                song.setLengthExact(lengthExact);
+                songs.add(song);
+            }
+            return songs;
+        } catch (RuntimeException e) { // Cut file or a position out of the dictionary.
+            throw new IOException("Damaged playlist file: " + file, e);
+        }
+    }
+
+    /**
+     * @return the count read, if the rest of the file can hold that many records of at least 4 bytes.
+     */
+    private static int checkCount(int count, ByteBuffer buffer) {
+        if (count < 0 || count > buffer.remaining() / 4) throw new IllegalStateException("Invalid count " + count);
+        return count;
+    }
+}
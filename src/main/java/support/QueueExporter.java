@@ -0,0 +1,184 @@
+package support;
+
+import javazoom.jl.decoder.JavaLayerException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes many files at the same time, one file per task in a fork-join pool, to WAV files or to nowhere.
+ * Every task has its own Bitstream, Decoder and output channel, so the tasks share nothing and the export scales with
+ * the number of cores.
+ */
+public final class QueueExporter {
+    private QueueExporter() {
+    }
+
+    /**
+     * @param paths MP3 files, {@link PlaylistFile}s and M3U playlists, such as the saved queue of the player.
+     * @return the MP3 files, with the songs of each playlist in its place.
+     */
+    public static List<String> filesOf(List<String> paths) throws IOException {
+        List<String> files = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            Path file = Path.of(path);
+            if (PlaylistFile.isPlaylistFile(file)) {
+                for (Song song : PlaylistFile.load(file)) {
+                    files.add(song.getFilePath());
+                }
+            } else if (M3uPlaylist.isM3uFile(file)) {
+                M3uPlaylist.read(file, entry -> files.add(entry.toString()));
+            } else {
+                files.add(path);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Stops at the first file that fails: the files not started yet are skipped, the ones being decoded are finished,
+     * and the WAV file of the failed one is deleted, so every WAV file left is complete.
+     *
+     * @param filePaths   Files to decode.
+     * @param outputDir   Directory of the WAV files, or null to discard the samples.
+     * @param parallelism Number of files decoded at the same time.
+     * @return the result of each file and of the whole export.
+     */
+    public static Report export(List<String> filePaths, Path outputDir, int parallelism) throws JavaLayerException {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            long start = System.nanoTime();
+            List<ForkJoinTask<OfflineDecoder.Report>> tasks = new ArrayList<>(filePaths.size());
+            for (int i = 0; i < filePaths.size(); i++) {
+                String filePath = filePaths.get(i);
+                Path wavFile = outputDir != null ? outputDir.resolve(wavName(i, filePath)) : null;
+                tasks.add(pool.submit(() -> decode(filePath, wavFile)));
+            }
+
+            List<OfflineDecoder.Report> reports = new ArrayList<>(tasks.size());
+            for (ForkJoinTask<OfflineDecoder.Report> task : tasks) {
+                try {
+                    reports.add(task.join());
+                } catch (RuntimeException e) {
+                    for (ForkJoinTask<OfflineDecoder.Report> other : tasks) {
+                        other.cancel(false); // Only the files not started yet, cancelling doesn't stop a decode.
+                    }
+                    if (e.getCause() instanceof JavaLayerException cause) throw cause;
+                    throw e;
+                }
+            }
+            return new Report(reports, System.nanoTime() - start, pool.getParallelism());
+        } finally {
+            pool.shutdown(); // Not shutdownNow, an interrupt closes the WAV files being written before their header.
+            try {
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Decodes one file, deleting its WAV file if it fails.
+     */
+    private static OfflineDecoder.Report decode(String filePath, Path wavFile) throws JavaLayerException {
+        try {
+            return OfflineDecoder.decode(filePath, new CaptureAudioDevice(wavFile));
+        } catch (JavaLayerException | RuntimeException e) {
+            if (wavFile != null) {
+                try {
+                    Files.deleteIfExists(wavFile);
+                } catch (IOException deleteError) {
+                    e.addSuppressed(deleteError);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param index    Position of the file in the export, keeps files with the same name apart.
+     * @param filePath File path.
+     * @return name of the WAV file.
+     */
+    static String wavName(int index, String filePath) {
+        String name = Path.of(filePath).getFileName().toString().replaceFirst("\\.[^.]*$", "");
+        return String.format("%03d - %s.wav", index + 1, name);
+    }
+
+    /**
+     * Result of an export.
+     */
+    public static final class Report {
+        private final List<OfflineDecoder.Report> files;
+        private final long nanos;
+        private final int parallelism;
+
+        private Report(List<OfflineDecoder.Report> files, long nanos, int parallelism) {
+            this.files = files;
+            this.nanos = nanos;
+            this.parallelism = parallelism;
+        }
+
+        /**
+         * @return the result of each file, in the order they were given.
+         */
+        public List<OfflineDecoder.Report> getFiles() {
+            return files;
+        }
+
+        /**
+         * @return time taken by the whole export, in nanoseconds.
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return number of frames decoded per second, counting every file.
+         */
+        public double getFramesPerSecond() {
+            long frames = 0;
+            for (OfflineDecoder.Report file : files) {
+                frames += file.getFrames();
+            }
+            return nanos > 0 ? frames * 1e9 / nanos : 0;
+        }
+
+        /**
+         * @return how many times faster than real time the files were decoded, counting every file.
+         */
+        public double getRealTimeFactor() {
+            double audioSeconds = 0;
+            for (OfflineDecoder.Report file : files) {
+                audioSeconds += file.getAudioSeconds();
+            }
+            return nanos > 0 ? audioSeconds * 1e9 / nanos : 0;
+        }
+
+        /**
+         * @return CPU time spent decoding every file divided by the time taken, the number of cores kept busy. It
+         * estimates the speedup over decoding the files one at a time. The wall time of each file is not used, it
+         * includes the time waiting for a core, so it would show a speedup even on a single core.
+         */
+        public double getSpeedup() {
+            long cpuNanos = 0;
+            for (OfflineDecoder.Report file : files) {
+                cpuNanos += file.getCpuNanos();
+            }
+            return nanos > 0 ? (double) cpuNanos / nanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d files in %.1f ms on %d threads, %.0f frames/s, %.1fx real time, %.2fx speedup",
+                    files.size(), nanos / 1e6, parallelism, getFramesPerSecond(), getRealTimeFactor(), getSpeedup());
+        }
+    }
+}
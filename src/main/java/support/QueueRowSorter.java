@@ -0,0 +1,84 @@
+package support;
+
+import javax.swing.SortOrder;
+import javax.swing.table.TableRowSorter;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sorts the queue table by the sort keys of {@link QueueTableModel}, so the text of the songs is never compared.
+ * Clicking a column sorts it ascending, then descending, then shows the queue in the order it plays again. Rows
+ * inserted or updated while sorted are put in place one by one, the whole table is only sorted again when many
+ * rows changed at once. Only the table is sorted, the queue keeps its order.
+ * Should only be used in the EDT.
+ */
+public final class QueueRowSorter extends TableRowSorter<QueueTableModel> {
+    /**
+     * @param queueModel Model of the queue.
+     */
+    public QueueRowSorter(QueueTableModel queueModel) {
+        super(queueModel);
+        setModelWrapper(new SortKeyWrapper(queueModel));
+        for (int column = 0; column < queueModel.getColumnCount(); column++) {
+            if (column == QueueTableModel.UUID_COLUMN) {
+                setSortable(column, false);
+            } else {
+                setComparator(column, Comparator.naturalOrder());
+            }
+        }
+        setSortsOnUpdates(true); // A refined length moves its row.
+    }
+
+    @Override
+    public void toggleSortOrder(int column) {
+        List<? extends SortKey> keys = getSortKeys();
+        if (!keys.isEmpty() && keys.get(0).getColumn() == column
+                && keys.get(0).getSortOrder() == SortOrder.DESCENDING) {
+            setSortKeys(null); // Back to the order of the queue.
+            return;
+        }
+        super.toggleSortOrder(column);
+    }
+
+    /**
+     * Gives the sort keys of the model to the sorter instead of the values shown.
+     */
+    private static final class SortKeyWrapper extends ModelWrapper<QueueTableModel, Integer> {
+        private final QueueTableModel queueModel;
+
+        private SortKeyWrapper(QueueTableModel queueModel) {
+            this.queueModel = queueModel;
+        }
+
+        @Override
+        public QueueTableModel getModel() {
+            return queueModel;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return queueModel.getColumnCount();
+        }
+
+        @Override
+        public int getRowCount() {
+            return queueModel.getRowCount();
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            return column == QueueTableModel.UUID_COLUMN ? queueModel.getValueAt(row, column)
+                    : queueModel.getSortKey(row, column);
+        }
+
+        @Override
+        public String getStringValueAt(int row, int column) {
+            return String.valueOf(queueModel.getValueAt(row, column));
+        }
+
+        @Override
+        public Integer getIdentifier(int row) {
+            return row;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package support;
+
+import javax.swing.RowFilter;
+import javax.swing.table.AbstractTableModel;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Model of the queue table, backed by the records of the songs in the {@link SongStore}. Only the songs of the rows
+ * shown are read from the store, so the model doesn't hold the songs. Each change to the queue only notifies the rows
+ * it changed, so adding or removing a song doesn't rebuild the table. The {@link SearchIndex} used to filter the
+ * rows is built on the first search, and sort keys are computed once per song the first time a column is sorted.
+ * Should only be used in the EDT.
+ */
+public final class QueueTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    static final String[] COLUMN_TITLES = new String[]{"Title", "Album", "Artist", "Year", "Length", "Path"};
+    static final int UUID_COLUMN = 5;
+    static final int LENGTH_COLUMN = 4;
+
+    private final SongStore store;
+    private int[] rowRecords; // Record of the song in each row.
+    private int rowCount;
+    private SearchIndex searchIndex; // Null until the first search.
+    private final ArrayList<CollationKey[]> recordKeys = new ArrayList<>(); // Sort keys of each record, made when sorted.
+    private final Collator collator = Collator.getInstance();
+
+    /**
+     * @param store   Store of the songs.
+     * @param records Records of the songs in the order they play.
+     */
+    public QueueTableModel(SongStore store, int[] records) {
+        collator.setStrength(Collator.SECONDARY); // Case doesn't change the order.
+        this.store = store;
+        rowRecords = Arrays.copyOf(records, Math.max(16, records.length));
+        rowCount = records.length;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_TITLES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_TITLES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Song song = getSong(row);
+        return switch (column) {
+            case 0 -> song.getTitle();
+            case 1 -> song.getAlbum();
+            case 2 -> song.getArtist();
+            case 3 -> song.getYear();
+            case 4 -> song.getStrLength();
+            case UUID_COLUMN -> song.getUuid();
+            default -> null;
+        };
+    }
+
+    /**
+     * @param row Row of the table.
+     * @return the song shown in the row.
+     */
+    public Song getSong(int row) {
+        Objects.checkIndex(row, rowCount);
+        return store.get(rowRecords[row]);
+    }
+
+    /**
+     * Adds a song to the end of the queue.
+     *
+     * @param song Song added.
+     */
+    public void add(Song song) {
+        append(store.add(song));
+        fireTableRowsInserted(rowCount - 1, rowCount - 1);
+    }
+
+    /**
+     * Adds songs to the end of the queue.
+     *
+     * @param songs Songs added.
+     */
+    public void addAll(List<Song> songs) {
+        if (songs.isEmpty()) return;
+        int first = rowCount;
+        for (Song song : songs) {
+            append(store.add(song));
+        }
+        fireTableRowsInserted(first, rowCount - 1);
+    }
+
+    /**
+     * @param index Position of the song removed.
+     */
+    public void remove(int index) {
+        Objects.checkIndex(index, rowCount);
+        int record = rowRecords[index];
+        if (record < recordKeys.size()) recordKeys.set(record, null); // Records are not reused.
+        if (searchIndex != null) searchIndex.remove(record);
+        rowCount--;
+        System.arraycopy(rowRecords, index + 1, rowRecords, index, rowCount - index);
+        fireTableRowsDeleted(index, index);
+    }
+
+    /**
+     * Shows the current information of a song again.
+     *
+     * @param index Position of the song changed.
+     */
+    public void update(int index) {
+        fireTableRowsUpdated(index, index);
+    }
+
+    /**
+     * Replaces every song, used when the whole order changes.
+     *
+     * @param records Records of the songs in the order they play.
+     */
+    public void setRecords(int[] records) {
+        boolean sameSize = records.length == rowCount;
+        rowRecords = Arrays.copyOf(records, Math.max(16, records.length));
+        rowCount = records.length;
+        if (searchIndex != null) searchIndex.setRecords(rowRecords, rowCount);
+        if (sameSize && rowCount > 0) {
+            fireTableRowsUpdated(0, rowCount - 1); // Only the order changed.
+        } else {
+            fireTableDataChanged();
+        }
+    }
+
+    /**
+     * @param query Words searched, separated by spaces.
+     * @return a filter of the rows whose title, album, artist or year contain every word, or null if nothing is
+     * searched. It keeps working as the queue changes.
+     */
+    public RowFilter<QueueTableModel, Integer> filter(String query) {
+        if (searchIndex == null) {
+            if (query.isBlank()) return null;
+            searchIndex = new SearchIndex(store);
+            searchIndex.setRecords(rowRecords, rowCount);
+        }
+        SearchIndex.Query songs = searchIndex.query(query);
+        if (songs.isEmpty()) return null;
+        return new RowFilter<>() {
+            @Override
+            public boolean include(Entry<? extends QueueTableModel, ? extends Integer> entry) {
+                return songs.matches(rowRecords[entry.getIdentifier()]);
+            }
+        };
+    }
+
+    /**
+     * @param row    Row of the table.
+     * @param column Column of the table, except the path.
+     * @return a key that sorts the row by the column, the length in milliseconds or the collation key of the text.
+     * The collation keys are made the first time they are needed and kept while the song is in the queue.
+     */
+    public Comparable<?> getSortKey(int row, int column) {
+        int record = rowRecords[row];
+        if (column == LENGTH_COLUMN) return store.getMsLength(record); // Changes when the length is refined.
+        while (recordKeys.size() <= record) {
+            recordKeys.add(null);
+        }
+        CollationKey[] keys = recordKeys.get(record);
+        if (keys == null) {
+            keys = new CollationKey[LENGTH_COLUMN];
+            recordKeys.set(record, keys);
+        }
+        if (keys[column] == null) {
+            keys[column] = collator.getCollationKey((String) getValueAt(row, column));
+        }
+        return keys[column];
+    }
+
+    private void append(int record) {
+        if (rowCount == rowRecords.length) {
+            rowRecords = Arrays.copyOf(rowRecords, rowCount * 2);
+        }
+        rowRecords[rowCount++] = record;
+        if (searchIndex != null) searchIndex.add(record);
+    }
+}
@@ -0,0 +1,287 @@
+package support;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Trigram index of the title, album, artist and year of the songs in the queue, kept up to date as songs are added and
+ * removed. A search only checks the text of the songs that have every trigram of the words searched, instead of
+ * every song. Words are matched anywhere in the fields, ignoring case and accents.
+ * Songs are indexed by their record in the {@link SongStore}, which never changes, so the list of records of each
+ * trigram stays sorted. Removed records are dropped from the lists once they are many.
+ * Should only be used in the EDT.
+ */
+public final class SearchIndex {
+    private final SongStore store;
+    private final HashMap<Integer, Postings> postings = new HashMap<>(); // Records of the songs with each trigram.
+    private final ArrayList<String> texts = new ArrayList<>(); // Normalized text of each record, null if not indexed.
+    private int size = 0; // Number of songs indexed.
+    private int removed = 0; // Number of removed records still in the lists of records.
+    private int version = 0; // Incremented on every change, so results are recomputed.
+
+    /**
+     * @param store Store of the songs.
+     */
+    public SearchIndex(SongStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Indexes a song.
+     *
+     * @param record Record of the song added to the queue.
+     */
+    public void add(int record) {
+        if (isIndexed(record)) return;
+        Song song = store.get(record);
+        String text = normalize(song.getTitle() + '\n' + song.getAlbum() + '\n' + song.getArtist() + '\n' + song.getYear());
+        while (texts.size() <= record) {
+            texts.add(null);
+        }
+        texts.set(record, text);
+        for (int trigram : trigrams(text)) {
+            postings.computeIfAbsent(trigram, key -> new Postings()).add(record);
+        }
+        size++;
+        version++;
+    }
+
+    /**
+     * Removes a song from the index.
+     *
+     * @param record Record of the song removed from the queue.
+     */
+    public void remove(int record) {
+        if (!isIndexed(record)) return;
+        texts.set(record, null); // Its trigrams still point to the record until they are compacted, searches skip it.
+        size--;
+        removed++;
+        version++;
+        if (removed > 1024 && removed > size) {
+            compact();
+        }
+    }
+
+    /**
+     * Indexes the songs that are not indexed yet and removes the songs not in the list. Songs already indexed keep
+     * their trigrams, so a new order of the same songs costs nothing.
+     *
+     * @param records Records of every song in the queue.
+     * @param count   Number of records used.
+     */
+    public void setRecords(int[] records, int count) {
+        BitSet kept = new BitSet(texts.size());
+        for (int i = 0; i < count; i++) {
+            kept.set(records[i]);
+        }
+        for (int record = kept.nextClearBit(0); record < texts.size(); record = kept.nextClearBit(record + 1)) {
+            remove(record);
+        }
+        for (int record = kept.nextSetBit(0); record >= 0; record = kept.nextSetBit(record + 1)) {
+            add(record); // In the order of the records, so they are appended to the lists.
+        }
+    }
+
+    /**
+     * @return number of songs indexed.
+     */
+    public int size() {
+        return size;
+    }
+
+    private boolean isIndexed(int record) {
+        return record < texts.size() && texts.get(record) != null;
+    }
+
+    /**
+     * @param query Words searched, separated by spaces.
+     * @return a query that matches the songs with every word, kept up to date with the index.
+     */
+    public Query query(String query) {
+        return new Query(normalize(query).strip().split("\\s+"));
+    }
+
+    /**
+     * @return the records of the songs with every word.
+     */
+    private BitSet search(String[] words) {
+        List<Postings> lists = new ArrayList<>(); // Lists of every trigram of the words.
+        for (String word : words) {
+            for (int trigram : trigrams(word)) {
+                Postings list = postings.get(trigram);
+                if (list == null) return new BitSet(); // No song has the trigram.
+                lists.add(list);
+            }
+        }
+
+        BitSet found = new BitSet(texts.size());
+        if (lists.isEmpty()) { // Only words shorter than a trigram, the text of each song is checked.
+            for (int record = 0; record < texts.size(); record++) {
+                if (matches(record, words)) found.set(record);
+            }
+            return found;
+        }
+
+        lists.sort(Comparator.comparingInt(list -> list.size)); // The shortest list has the fewest candidates.
+        int[] candidates = Arrays.copyOf(lists.get(0).records, lists.get(0).size); // Records with every trigram.
+        int count = candidates.length;
+        for (int i = 1; i < lists.size() && count > 0; i++) {
+            count = lists.get(i).retain(candidates, count);
+        }
+        for (int i = 0; i < count; i++) {
+            if (matches(candidates[i], words)) found.set(candidates[i]);
+        }
+        return found;
+    }
+
+    /**
+     * @return True if the record is indexed and its text contains every word.
+     */
+    private boolean matches(int record, String[] words) {
+        String text = texts.get(record);
+        if (text == null) return false;
+        for (String word : words) {
+            if (!text.contains(word)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Drops the removed records from the lists of records, and the lists left empty.
+     */
+    private void compact() {
+        postings.values().removeIf(list -> list.retainLive(texts) == 0);
+        removed = 0;
+    }
+
+    /**
+     * @return the text in lower case and without accents.
+     */
+    private static String normalize(String text) {
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lowerCase.length(); i++) {
+            if (lowerCase.charAt(i) >= 0x80) { // Only text that is not ASCII can have accents.
+                return Normalizer.normalize(lowerCase, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+            }
+        }
+        return lowerCase;
+    }
+
+    /**
+     * @return the distinct trigrams of the text, without the ones across fields or words. Characters after the first
+     * 1024 share bits, so different trigrams can have the same key, the text of the candidates is always checked.
+     */
+    private static int[] trigrams(String text) {
+        int[] trigrams = new int[Math.max(0, text.length() - 2)];
+        int count = 0;
+        for (int i = 0; i + 2 < text.length(); i++) {
+            char a = text.charAt(i);
+            char b = text.charAt(i + 1);
+            char c = text.charAt(i + 2);
+            if (Character.isWhitespace(a) || Character.isWhitespace(b) || Character.isWhitespace(c)) continue;
+            trigrams[count++] = (a & 0x3FF) << 20 | (b & 0x3FF) << 10 | (c & 0x3FF);
+        }
+        Arrays.sort(trigrams, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || trigrams[i] != trigrams[distinct - 1]) trigrams[distinct++] = trigrams[i];
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    /**
+     * Songs that match the words searched. The result is searched again when the index changed.
+     */
+    public final class Query {
+        private final String[] words;
+        private BitSet found;
+        private int foundVersion;
+
+        private Query(String[] words) {
+            this.words = words;
+        }
+
+        /**
+         * @return True if nothing is searched, every song matches.
+         */
+        public boolean isEmpty() {
+            return words.length == 0 || words[0].isEmpty();
+        }
+
+        /**
+         * @param record Record of a song in the queue.
+         * @return True if the song has every word searched.
+         */
+        public boolean matches(int record) {
+            if (isEmpty()) return true;
+            if (found == null || foundVersion != version) {
+                found = search(words);
+                foundVersion = version;
+            }
+            return found.get(record);
+        }
+    }
+
+    /**
+     * Sorted records of the songs with a trigram.
+     */
+    private static final class Postings {
+        private int[] records = new int[4];
+        private int size = 0;
+
+        private void add(int record) {
+            int position = size;
+            if (size > 0 && records[size - 1] >= record) { // Only when a removed record is indexed again.
+                position = Arrays.binarySearch(records, 0, size, record);
+                if (position >= 0) return;
+                position = -position - 1;
+            }
+            if (size == records.length) records = Arrays.copyOf(records, size * 2);
+            System.arraycopy(records, position, records, position + 1, size - position);
+            records[position] = record;
+            size++;
+        }
+
+        /**
+         * Keeps only the records still indexed.
+         *
+         * @return number of records kept.
+         */
+        private int retainLive(List<String> texts) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (texts.get(records[i]) != null) records[kept++] = records[i];
+            }
+            size = kept;
+            return kept;
+        }
+
+        /**
+         * Keeps only the candidates in this list.
+         *
+         * @return number of candidates kept, moved to the start of the array.
+         */
+        private int retain(int[] candidates, int count) {
+            int kept = 0;
+            int j = 0;
+            boolean few = count * 16 < size; // Binary search instead of walking the whole list.
+            for (int i = 0; i < count && j < size; i++) {
+                int record = candidates[i];
+                if (few) {
+                    int found = Arrays.binarySearch(records, j, size, record);
+                    j = found >= 0 ? found : -found - 1;
+                } else {
+                    while (j < size && records[j] < record) j++;
+                }
+                if (j < size && records[j] == record) candidates[kept++] = record;
+            }
+            return kept;
+        }
+    }
+}
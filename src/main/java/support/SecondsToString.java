@@ -50,4 +50,51 @@ public class SecondsToString {
         long SS = duration.toSecondsPart();
         return String.format("%d:%02d:%02d", HH, MM, SS);
     }
+
+    /**
+     * Same as {@link #lengthToString(int)}, but appends to the builder instead of creating a String.
+     */
+    public static void appendLength(StringBuilder builder, int length) {
+        if (length < 0) {
+            builder.append("--:--");
+            return;
+        }
+        if (length < 60) {
+            // Up to 59 seconds
+            builder.append(length).append('s');
+            return;
+        }
+        appendClock(builder, length, length >= 3600);
+    }
+
+    /**
+     * Same as {@link #currentTimeToString(int, int)}, but appends to the builder instead of creating a String.
+     */
+    public static void appendCurrentTime(StringBuilder builder, int currentTime, int totalTime) {
+        if (currentTime > totalTime | currentTime < 0) {
+            builder.append("--:--");
+            return;
+        }
+        if (totalTime < 60) {
+            // Up to 59 seconds
+            builder.append(currentTime).append('s');
+            return;
+        }
+        appendClock(builder, currentTime, totalTime >= 3600);
+    }
+
+    private static void appendClock(StringBuilder builder, int seconds, boolean withHours) {
+        int HH = seconds / 3600;
+        int MM = seconds / 60;
+        int SS = seconds % 60;
+        if (withHours) {
+            // More than 59:59
+            builder.append(HH).append(':');
+            MM %= 60;
+            if (MM < 10) builder.append('0');
+        }
+        builder.append(MM).append(':');
+        if (SS < 10) builder.append('0');
+        builder.append(SS);
+    }
 }
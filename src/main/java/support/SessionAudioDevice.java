@@ -0,0 +1,300 @@
+package support;
+
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.player.AudioDevice;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AudioDevice that lives for the whole session. The audio line is opened on the first write and only reopened when
+ * the format of the samples changes, so changing songs doesn't pay the cost of opening a new line.
+ * The format is set with {@link #setFormat(int, int)} instead of being taken from a Decoder.
+ * Unless -Dplayer.adaptiveBuffer=false, the size of the line buffer adapts: an underrun, a write that finds the line
+ * empty while playing, doubles the latency of the buffer up to -Dplayer.maxLatency=MS and reopens the line, which is
+ * empty anyway. After 30 seconds of audio without underruns the latency goes down towards -Dplayer.minLatency=MS,
+ * applied on the next reset, when the audio not played is discarded anyway. -Dplayer.latency=MS is the initial latency.
+ * With adaptiveBuffer=false the line keeps the default buffer of the system.
+ */
+public final class SessionAudioDevice implements AudioDevice {
+    private static final boolean ADAPTIVE = Boolean.parseBoolean(System.getProperty("player.adaptiveBuffer", "true"));
+    private static final int MIN_LATENCY = Math.max(10, Integer.getInteger("player.minLatency", 50));
+    private static final int MAX_LATENCY = Math.max(MIN_LATENCY, Integer.getInteger("player.maxLatency", 1000));
+    private static final int QUIET_SECONDS = 30; // Audio played without underruns before the latency goes down.
+    private static final AtomicLong underruns = new AtomicLong();
+
+    private final LineFactory lines;
+    private volatile SourceDataLine line;
+    private AudioFormat format; // Format of the samples being written. Guarded by this.
+    private byte[] bytes = new byte[4608]; // Reused to convert samples to bytes. Only used by the writing thread.
+    private boolean open = true; // Guarded by this.
+    private boolean paused = false; // Guarded by this.
+    private volatile int generation = 0; // Incremented on every reset.
+    private int latency = Math.max(MIN_LATENCY, Math.min(MAX_LATENCY, Integer.getInteger("player.latency", 200)));
+    private int lineLatency = 0; // Latency of the open line in milliseconds, latency is the next one. Guarded by this.
+    private volatile boolean reopen = false; // The line should be reopened with the new latency. Set while holding this.
+    private volatile boolean primed = false; // If audio was written since the line was opened, reset or resumed.
+    private long quietBytes = 0; // Bytes written since the last underrun. Only used by the writing thread.
+
+    /**
+     * Creates a device that plays on the default line of the system.
+     */
+    public SessionAudioDevice() {
+        this(format -> (SourceDataLine) AudioSystem.getLine(new DataLine.Info(SourceDataLine.class, format)));
+    }
+
+    /**
+     * @param lines Gets the lines to open, the tests give lines without a sound card.
+     */
+    SessionAudioDevice(LineFactory lines) {
+        this.lines = lines;
+    }
+
+    /**
+     * Opens the device again if it was closed. The decoder is not used, see {@link #setFormat(int, int)}.
+     */
+    @Override
+    public synchronized void open(Decoder decoder) {
+        open = true;
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Sets the format of the next samples written. The line is only reopened if the format changed.
+     *
+     * @param frequency Sample frequency in Hz.
+     * @param channels  Number of channels.
+     */
+    public synchronized void setFormat(int frequency, int channels) throws JavaLayerException {
+        if (format != null && format.getSampleRate() == frequency && format.getChannels() == channels) return;
+        format = new AudioFormat(frequency, 16, channels, true, false);
+        closeLine();
+        if (open) {
+            openLine();
+        }
+    }
+
+    /**
+     * Discards the audio that was written but not played yet. Should be called when the song changes.
+     */
+    public synchronized void reset() {
+        generation++;
+        primed = false;
+        SourceDataLine line = this.line;
+        if (line != null) {
+            line.flush();
+            reopen = ADAPTIVE && lineLatency != latency; // Done by the writing thread, which may be using the line.
+        }
+    }
+
+    /**
+     * Stops playing the audio written, keeping it to be played on {@link #resume()}. Writes block while paused.
+     */
+    public synchronized void pause() {
+        paused = true;
+        SourceDataLine line = this.line;
+        if (line != null) {
+            line.stop();
+        }
+    }
+
+    /**
+     * Continues playing after {@link #pause()}.
+     */
+    public synchronized void resume() {
+        paused = false;
+        primed = false; // The line may have played everything before it was paused.
+        SourceDataLine line = this.line;
+        if (line != null) {
+            line.start();
+        }
+    }
+
+    /**
+     * @return a number that changes every time the device is reset.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return number of times the line ran out of audio while playing, in every device.
+     */
+    public static long getUnderruns() {
+        return underruns.get();
+    }
+
+    /**
+     * @return latency of the line buffer in milliseconds, or 0 if the line is not open.
+     */
+    public int getLatency() {
+        SourceDataLine line = this.line;
+        if (line == null) return 0;
+        AudioFormat format = line.getFormat();
+        return (int) (line.getBufferSize() / format.getFrameSize() * 1000L / (long) format.getFrameRate());
+    }
+
+    /**
+     * Writes the samples only if the device wasn't reset since the generation was read, so samples taken before a
+     * song change are not played after it.
+     *
+     * @param generation Value of {@link #getGeneration()} when the samples were taken.
+     */
+    public void write(int generation, short[] samples, int offs, int len) throws JavaLayerException {
+        if (generation != this.generation) return;
+        write(samples, offs, len);
+        if (generation != this.generation) { // Reset after the check, the samples may have been written after its flush.
+            discardWritten();
+        }
+    }
+
+    @Override
+    public void write(short[] samples, int offs, int len) throws JavaLayerException {
+        SourceDataLine line = this.line;
+        if (line == null) {
+            synchronized (this) {
+                if (!open || format == null) return;
+                if (this.line == null) openLine();
+                line = this.line;
+            }
+        }
+        if (ADAPTIVE) {
+            line = adapt(line, len * 2);
+            if (line == null) return;
+        }
+        if (bytes.length < len * 2) {
+            bytes = new byte[len * 2];
+        }
+        int idx = 0;
+        for (int i = offs; i < offs + len; i++) { // Little endian 16 bits.
+            short sample = samples[i];
+            bytes[idx++] = (byte) sample;
+            bytes[idx++] = (byte) (sample >>> 8);
+        }
+        line.write(bytes, 0, len * 2);
+    }
+
+    /**
+     * Discards the audio written to the line that is open now, as {@link #reset()} does, without a new generation.
+     * Only the writing thread writes, so nothing of the new generation was written yet.
+     */
+    private synchronized void discardWritten() {
+        primed = false;
+        SourceDataLine line = this.line;
+        if (line != null) {
+            line.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        open = false;
+        closeLine();
+    }
+
+    /**
+     * Blocks until all the audio written was played.
+     */
+    @Override
+    public void flush() {
+        SourceDataLine line = this.line;
+        if (line != null) {
+            line.drain();
+        }
+    }
+
+    /**
+     * @return the playback position of the line in milliseconds.
+     */
+    @Override
+    public int getPosition() {
+        SourceDataLine line = this.line;
+        return line != null ? (int) (line.getMicrosecondPosition() / 1000) : 0;
+    }
+
+    /**
+     * Checks for an underrun before writing, growing the buffer if there was one and shrinking it after a while
+     * without them.
+     *
+     * @param line  Line about to be written.
+     * @param bytes Bytes about to be written.
+     * @return the line to write to, a new one if it was reopened.
+     */
+    private SourceDataLine adapt(SourceDataLine line, int bytes) throws JavaLayerException {
+        boolean underrun = primed && line.available() >= line.getBufferSize(); // Everything written was played.
+        if (underrun || reopen) {
+            synchronized (this) {
+                if (underrun && latency < MAX_LATENCY) {
+                    latency = Math.min(MAX_LATENCY, latency * 2);
+                    reopen = true; // The line is empty, nothing is lost.
+                }
+                if (reopen) {
+                    reopen = false;
+                    if (line == this.line) { // Otherwise the format changed and the line is already new.
+                        closeLine();
+                        if (open) openLine();
+                    }
+                }
+                line = this.line;
+            }
+            if (line == null) return null;
+        }
+        if (underrun) {
+            underruns.incrementAndGet();
+            quietBytes = 0;
+        }
+        else if ((quietBytes += bytes) > (long) line.getFormat().getFrameRate() * line.getFormat().getFrameSize()
+                * QUIET_SECONDS) {
+            quietBytes = 0;
+            synchronized (this) {
+                latency = Math.max(MIN_LATENCY, latency * 3 / 4);
+            }
+        }
+        primed = true;
+        return line;
+    }
+
+    private void openLine() throws JavaLayerException {
+        try {
+            SourceDataLine line = lines.getLine(format);
+            if (ADAPTIVE) {
+                int frameBytes = format.getFrameSize();
+                line.open(format, (int) (format.getFrameRate() * latency / 1000) * frameBytes);
+                lineLatency = latency;
+            } else {
+                line.open(format);
+            }
+            if (!paused) line.start();
+            this.line = line;
+            OpenResources.lineOpened();
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            throw new JavaLayerException("Cannot open audio line for " + format, e);
+        }
+    }
+
+    private void closeLine() {
+        SourceDataLine line = this.line;
+        primed = false;
+        if (line != null) {
+            this.line = null;
+            line.close();
+            OpenResources.lineClosed();
+        }
+    }
+
+    /**
+     * Gets a line for a format, not opened yet.
+     */
+    interface LineFactory {
+        SourceDataLine getLine(AudioFormat format) throws LineUnavailableException;
+    }
+}
@@ -1,8 +1,12 @@
 package support;
 
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
 
 public class Song {
     private final String uuid;
@@ -10,12 +14,17 @@ public class Song {
     private final String album;
     private final String artist;
     private final String year;
-    private final float msLength;
-    private final String strLength;
+    private volatile float msLength; // The length can be refined after the song is created, see refineLength().
+    private volatile String strLength;
     private final String filePath;
     private final int fileSize;
-    private final int numFrames;
-    private final float msPerFrame;
+    private volatile int numFrames;
+    private volatile float msPerFrame;
+    private volatile boolean lengthExact = false; // If the frames of the file were counted.
+    private volatile CompletableFuture<FrameIndex> frameIndex;
+    private ByteBuffer mappedFile; // Mapped on the first stream. Guarded by this.
+    private volatile SongStore store; // Store of the song, null if it was not added to one.
+    private volatile int record = -1; // Record of the song in the store.
 
     /**
      * Creates a copy of the Song object passed in.
@@ -35,6 +44,8 @@ public class Song {
         fileSize = song.getFileSize();
         numFrames = song.getNumFrames();
         msPerFrame = song.getMsPerFrame();
+        lengthExact = song.isLengthExact();
+        frameIndex = song.frameIndex;
     }
 
     /**
@@ -124,7 +135,124 @@ public class Song {
         return msPerFrame;
     }
 
-    public BufferedInputStream getBufferedInputStream() throws FileNotFoundException {
-        return new BufferedInputStream(new FileInputStream(this.getFilePath()));
+    /**
+     * @return the store of the song, or null if it is not in one.
+     */
+    SongStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return the record of the song in its store, or -1 if it is not in one.
+     */
+    int getRecord() {
+        return record;
+    }
+
+    /**
+     * @param store  Store of the song.
+     * @param record Record of the song in the store.
+     */
+    void setStored(SongStore store, int record) {
+        this.record = record;
+        this.store = store;
+        CompletableFuture<FrameIndex> index = frameIndex;
+        if (index != null) store.keepFrameIndex(record, index);
+    }
+
+    /**
+     * @return True if the length was counted from the frames of the file, False if it was estimated.
+     */
+    public boolean isLengthExact() {
+        return lengthExact;
+    }
+
+    void setLengthExact(boolean lengthExact) {
+        this.lengthExact = lengthExact;
+    }
+
+    /**
+     * Corrects the length with the frames counted by the frame index, building it if it was not started yet. The
+     * index is kept, so it is only built once, and songs only pay for it when they are about to play.
+     *
+     * @return future completed with True if the length changed.
+     */
+    public CompletableFuture<Boolean> refineLength() {
+        buildFrameIndex();
+        return frameIndex.thenApply(this::updateLength);
+    }
+
+    private synchronized boolean updateLength(FrameIndex index) {
+        lengthExact = true;
+        if (index.getNumFrames() == numFrames && index.getMsPerFrame() == msPerFrame) return false;
+        numFrames = index.getNumFrames();
+        msPerFrame = index.getMsPerFrame();
+        msLength = numFrames * msPerFrame;
+        strLength = SongLoader.formatLength(msLength);
+        return true;
+    }
+
+    /**
+     * @return stream of the song file from the beginning.
+     */
+    public InputStream getInputStream() throws IOException {
+        return getInputStream(0);
+    }
+
+    /**
+     * The file is memory-mapped on the first call and the mapping is shared by every stream of the song, so seeking
+     * and replaying only reads from the page cache.
+     *
+     * @param position Byte offset in the file where the stream starts.
+     * @return stream of the song file starting at the given position.
+     */
+    public InputStream getInputStream(int position) throws IOException {
+        return new MappedInputStream(getMappedFile(), position);
+    }
+
+    /**
+     * @return the song file mapped in memory. The same mapping is returned on every call.
+     */
+    synchronized ByteBuffer getMappedFile() throws IOException {
+        if (mappedFile == null) {
+            mappedFile = map(this.getFilePath());
+        }
+        return mappedFile;
+    }
+
+    /**
+     * @param filePath File path.
+     * @return a new read-only mapping of the whole file.
+     */
+    static ByteBuffer map(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Starts building the frame index of the song in the background. Does nothing if it was already started.
+     */
+    public synchronized void buildFrameIndex() {
+        if (frameIndex == null) {
+            frameIndex = FrameIndex.buildAsync(this.getFilePath());
+            if (store != null) store.keepFrameIndex(record, frameIndex); // For the song read again from the store.
+        }
+    }
+
+    /**
+     * @param frameIndex Frame index kept by the store for the record of the song, or null.
+     */
+    synchronized void setFrameIndex(CompletableFuture<FrameIndex> frameIndex) {
+        this.frameIndex = frameIndex;
+    }
+
+    /**
+     * @return the frame index of the song or null if it is not ready (or could not be built).
+     */
+    public FrameIndex getFrameIndex() {
+        CompletableFuture<FrameIndex> future = frameIndex;
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) return null;
+        return future.join();
     }
 }
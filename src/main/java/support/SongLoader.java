@@ -0,0 +1,139 @@
+package support;
+
+import com.mpatric.mp3agic.ID3v1;
+import com.mpatric.mp3agic.ID3v2;
+import com.mpatric.mp3agic.InvalidDataException;
+import com.mpatric.mp3agic.Mp3File;
+import com.mpatric.mp3agic.UnsupportedTagException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates songs from MP3 files.
+ */
+public final class SongLoader {
+    private static final Logger LOG = Logger.getLogger(SongLoader.class.getName());
+
+    private SongLoader() {
+    }
+
+    /**
+     * Size of the buffer used by Mp3File to find the tags and the first frame.
+     */
+    private static final int TAG_BUFFER_LENGTH = 64 * 1024;
+
+    /**
+     * Reads the ID3 tags and the length of the file, without asking the user for missing tags.
+     * Files in the {@link MetadataCache} are not read. Otherwise only the tags and the first frame are read, the
+     * length is estimated, see {@link #refine(Song)}.
+     *
+     * @param file MP3 file.
+     * @return the song of the file.
+     */
+    public static Song load(Path file) throws IOException, UnsupportedTagException, InvalidDataException {
+        Song song = MetadataCache.getDefault().get(file);
+        if (song != null) return song;
+
+        Mp3File mp3File = open(file);
+        String[] tags = readTags(mp3File);
+        return create(file, tags[0], tags[1], tags[2], tags[3]);
+    }
+
+    /**
+     * @param file MP3 file.
+     * @return the tags and first frame of the file, without scanning every frame.
+     */
+    static Mp3File open(Path file) throws IOException, UnsupportedTagException, InvalidDataException {
+        return new Mp3File(file, TAG_BUFFER_LENGTH, false);
+    }
+
+    /**
+     * Counts the frames of the song with its frame index, if its length was estimated from the bitrate. The exact
+     * length is also saved in the {@link MetadataCache}.
+     *
+     * @param song Song created by this class.
+     * @return future completed with True if the length changed.
+     */
+    public static CompletableFuture<Boolean> refine(Song song) {
+        if (song.isLengthExact()) return CompletableFuture.completedFuture(false);
+        return song.refineLength().thenApply(changed -> {
+            try {
+                MetadataCache.getDefault().put(song);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Length not cached: " + song.getFilePath(), e); // Only the cache is not updated.
+            }
+            return changed;
+        });
+    }
+
+    /**
+     * @param msLength Length in milliseconds.
+     * @return the length in the format 0:00:00.
+     */
+    static String formatLength(float msLength) {
+        Duration duration = Duration.ofMillis((long) msLength);
+        long HH = duration.toHours();
+        long MM = duration.toMinutesPart();
+        long SS = duration.toSecondsPart();
+        return String.format("%d:%02d:%02d", HH, MM, SS);
+    }
+
+    /**
+     * @param mp3File Parsed MP3 file.
+     * @return title, album, artist and year of the file. Missing tags are null or blank.
+     */
+    static String[] readTags(Mp3File mp3File) {
+        String[] tags = new String[4];
+        // Try to get ID3 info
+        if (mp3File.hasId3v1Tag()) {
+            ID3v1 id3 = mp3File.getId3v1Tag();
+            tags[0] = id3.getTitle();
+            tags[1] = id3.getAlbum();
+            tags[2] = id3.getArtist();
+            tags[3] = id3.getYear();
+        } else if (mp3File.hasId3v2Tag()) {
+            ID3v2 id3 = mp3File.getId3v2Tag();
+            tags[0] = id3.getTitle();
+            tags[1] = id3.getAlbum();
+            tags[2] = id3.getArtist();
+            tags[3] = id3.getYear();
+        }
+        return tags;
+    }
+
+    /**
+     * @param file    MP3 file.
+     * @param title   Song title, "Untitled" if blank.
+     * @param album   Song album, "Untitled" if blank.
+     * @param artist  Song artist, "Unknown" if blank.
+     * @param year    Song year, "Unknown" if blank.
+     * @return a new song of the file, also added to the {@link MetadataCache}.
+     */
+    static Song create(Path file, String title, String album, String artist, String year) throws IOException {
+        String filePath = file.toString();
+        int fileSize = (int) Files.size(file);
+        LengthEstimate length = LengthEstimate.read(filePath);
+        int numFrames = length.getNumFrames();
+        float msLength = length.getMsLength();
+        float msPerFrame = length.getMsPerFrame();
+        String strLength = formatLength(msLength);
+
+        if (title == null || title.isBlank()) title = "Untitled";
+        if (album == null || album.isBlank()) album = "Untitled";
+        if (artist == null || artist.isBlank()) artist = "Unknown";
+        if (year == null || year.isBlank()) year = "Unknown";
+
+        String uuid = UUID.randomUUID().toString();
+        Song song = new Song(uuid, title, album, artist, year, strLength, msLength, filePath, fileSize, numFrames, msPerFrame);
+        song.setLengthExact(length.isFromVbrHeader()); // The encoder counted the frames, no need to count them again.
+        MetadataCache.getDefault().put(song);
+        return song;
+    }
+}
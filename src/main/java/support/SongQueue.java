@@ -0,0 +1,188 @@
+package support;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * The songs of the playlist, in the order they play.
+ * The songs are kept in a {@link SongStore}, the queue only keeps their records in the order they were added. The
+ * shuffle is a second order of the same records, so turning it off drops it and songs added while shuffled go to the
+ * end of both orders. Both orders stay contiguous, as the queue table shows them, so removing a song moves the songs
+ * after it in each order: O(n) like the queue without the shuffle, but only the songs after it are touched.
+ * This class is NOT THREAD SAFE!
+ */
+public final class SongQueue {
+    private final SongStore store;
+    private int[] records = new int[16]; // Records of the songs in the order they were added.
+    private int size = 0;
+    private int[] positions = new int[16]; // Position in records plus one of each record, 0 if it isn't in the queue.
+    private boolean shuffleActivated = false; // Indicates if shuffle is activated.
+    private int[] order = new int[0]; // Records of the songs in the shuffled order. Only used while shuffled.
+    private int[] shuffledPositions = new int[0]; // Position in the shuffled order of each record. Same.
+
+    /**
+     * @param store Store where the songs added are kept.
+     */
+    public SongQueue(SongStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @return number of songs in the queue.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param index Position in the queue.
+     * @return the song at the position.
+     */
+    public Song get(int index) {
+        Objects.checkIndex(index, size);
+        return store.get(shuffleActivated ? order[index] : records[index]);
+    }
+
+    /**
+     * @return the last song of the queue.
+     */
+    public Song getLast() {
+        return get(size - 1);
+    }
+
+    /**
+     * @param song Song in the queue.
+     * @return the position of the song or -1 if it isn't in the queue.
+     */
+    public int indexOf(Song song) {
+        if (song == null || song.getStore() != store) return -1;
+        int record = song.getRecord();
+        if (record >= positions.length || positions[record] == 0) return -1;
+        return shuffleActivated ? shuffledPositions[record] : positions[record] - 1;
+    }
+
+    /**
+     * @return the records of the songs, in the order they play.
+     */
+    public int[] getRecords() {
+        return Arrays.copyOf(shuffleActivated ? order : records, size);
+    }
+
+    /**
+     * @return the songs, in the order they play. They are read from the store as the list is used.
+     */
+    public List<Song> getSongs() {
+        return store.view(getRecords());
+    }
+
+    /**
+     * @return True if the queue is shuffled.
+     */
+    public boolean isShuffled() {
+        return shuffleActivated;
+    }
+
+    /**
+     * Adds the song to the end of the queue.
+     *
+     * @param song Song to add.
+     */
+    public void add(Song song) {
+        int record = store.add(song);
+        int position = size;
+        if (position == records.length) {
+            records = Arrays.copyOf(records, position * 2);
+        }
+        if (record >= positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(record + 1, positions.length * 2));
+        }
+        records[position] = record; // adding the new song into the queue.
+        positions[record] = position + 1;
+        size++;
+        if (shuffleActivated) { // Also the last song of the shuffled order.
+            if (position == order.length) {
+                order = Arrays.copyOf(order, Math.max(16, position * 2));
+            }
+            if (record >= shuffledPositions.length) {
+                shuffledPositions = Arrays.copyOf(shuffledPositions, positions.length);
+            }
+            order[position] = record;
+            shuffledPositions[record] = position;
+        }
+    }
+
+    /**
+     * Removes the song at the position from the queue, and from the order without the shuffle.
+     *
+     * @param index Position in the queue.
+     */
+    public void remove(int index) {
+        Objects.checkIndex(index, size);
+        int record = shuffleActivated ? order[index] : records[index];
+        int position = positions[record] - 1;
+        positions[record] = 0;
+        size--;
+        System.arraycopy(records, position + 1, records, position, size - position);
+        for (int i = position; i < size; i++) { // The songs after it moved one position back.
+            positions[records[i]] = i + 1;
+        }
+        if (shuffleActivated) { // The same in the shuffled order, it holds records so the rest of it didn't change.
+            System.arraycopy(order, index + 1, order, index, size - index);
+            for (int i = index; i < size; i++) {
+                shuffledPositions[order[i]] = i;
+            }
+        }
+    }
+
+    /**
+     * Shuffles the queue. The order without the shuffle is restored by {@link #unshuffle()}.
+     *
+     * @param head   Song that goes to the head of the queue, or null.
+     * @param random Source of the new order.
+     */
+    public void shuffle(Song head, Random random) {
+        if (order.length < size) {
+            order = new int[size];
+        }
+        if (shuffledPositions.length < positions.length) {
+            shuffledPositions = new int[positions.length];
+        }
+        System.arraycopy(records, 0, order, 0, size);
+        for (int i = size; i > 1; i--) { // Fisher-Yates, the same order as Collections.shuffle with the same Random.
+            swap(order, i - 1, random.nextInt(i));
+        }
+
+        shuffleActivated = false;
+        if (indexOf(head) >= 0) { // If a song is playing, the current playing song go to the head of the queue.
+            for (int i = 1; i < size; i++) {
+                if (order[i] == head.getRecord()) {
+                    swap(order, 0, i);
+                    break;
+                }
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            shuffledPositions[order[i]] = i;
+        }
+        shuffleActivated = true;
+    }
+
+    /**
+     * Restores the order of the songs before {@link #shuffle(Song, Random)}.
+     */
+    public void unshuffle() {
+        shuffleActivated = false; // The songs are already in that order.
+    }
+
+    private static void swap(int[] array, int i, int j) {
+        int value = array[i];
+        array[i] = array[j];
+        array[j] = value;
+    }
+}
@@ -0,0 +1,309 @@
+package support;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Memory-mapped store of the songs in the queue, so the queue and its table only keep the number of the record of
+ * each song instead of the songs. A song is only in the heap while something uses it: it is read from its record
+ * when asked for, and the same object is returned while it is still in use, so songs can be compared with ==.
+ * Records have a fixed size and point to their strings in a second file, the length is only stored as numbers so it
+ * can be rewritten in place. Both files are mapped in chunks as they grow, are temporary, locked while in use and
+ * deleted when the program exits, or by the next store if the program was killed. Records are only appended, removed
+ * songs keep theirs. Records can be read from any thread, songs are added by one thread at a time.
+ */
+public final class SongStore {
+    private static final Logger LOG = Logger.getLogger(SongStore.class.getName());
+
+    private static final int RECORD_BYTES = 80; // 6 string offsets, 4 numbers and if the length is exact.
+    private static final int RECORDS_PER_CHUNK = 1 << 16;
+    private static final int STRING_CHUNK_BYTES = 1 << 24;
+    private static final int FIELDS = 6; // uuid, title, album, artist, year and path.
+    private static final int MS_LENGTH = FIELDS * 8;
+    private static final int FILE_SIZE = MS_LENGTH + 4;
+    private static final int NUM_FRAMES = FILE_SIZE + 4;
+    private static final int MS_PER_FRAME = NUM_FRAMES + 4;
+    private static final int LENGTH_EXACT = MS_PER_FRAME + 4;
+    private static final int KEPT_FRAME_INDEXES = 16; // Songs read again from their record keep their frame index.
+
+    private final FileChannel recordFile;
+    private final FileChannel stringFile;
+    private volatile MappedByteBuffer[] recordChunks = new MappedByteBuffer[0];
+    private volatile MappedByteBuffer[] stringChunks = new MappedByteBuffer[0];
+    private volatile int size = 0; // Records written, read after the record is complete.
+    private long stringEnd = 0; // Offset of the next string. Guarded by this.
+    private final ConcurrentHashMap<Integer, SongReference> songs = new ConcurrentHashMap<>(); // Songs still in use.
+    private final ReferenceQueue<Song> unusedSongs = new ReferenceQueue<>();
+    private final Map<Integer, CompletableFuture<FrameIndex>> frameIndexes = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, CompletableFuture<FrameIndex>> eldest) {
+            return size() > KEPT_FRAME_INDEXES; // Least recently used.
+        }
+    }; // Guarded by itself.
+
+    /**
+     * Creates an empty store in temporary files.
+     */
+    public SongStore() {
+        try {
+            recordFile = openTemporary("queue-records");
+            stringFile = openTemporary("queue-strings");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return number of songs added.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Writes the song in a new record, if it is not in the store yet.
+     *
+     * @param song Song to add.
+     * @return the record of the song.
+     */
+    public synchronized int add(Song song) {
+        if (song.getStore() == this) return song.getRecord();
+        if (song.getStore() != null) throw new IllegalArgumentException("The song is in another store");
+        int record = size;
+        try {
+            ByteBuffer chunk = recordChunk(record);
+            int position = (record % RECORDS_PER_CHUNK) * RECORD_BYTES;
+            String[] fields = {song.getUuid(), song.getTitle(), song.getAlbum(), song.getArtist(), song.getYear(),
+                    song.getFilePath()};
+            for (int i = 0; i < FIELDS; i++) {
+                chunk.putLong(position + i * 8, writeString(fields[i]));
+            }
+            writeLength(chunk, position, song);
+            chunk.putInt(position + FILE_SIZE, song.getFileSize());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        song.setStored(this, record); // Also keeps its frame index, if it was built.
+        expungeUnusedSongs();
+        songs.put(record, new SongReference(song, record, unusedSongs));
+        size = record + 1;
+        return record;
+    }
+
+    /**
+     * Writes the length of the song again, after it was refined. The record is rewritten in place.
+     *
+     * @param song Song in the store.
+     */
+    public synchronized void updateLength(Song song) {
+        if (song.getStore() != this) return;
+        int record = song.getRecord();
+        writeLength(recordChunks[record / RECORDS_PER_CHUNK], (record % RECORDS_PER_CHUNK) * RECORD_BYTES, song);
+    }
+
+    /**
+     * Keeps the frame index of the song, so the song read again from its record after it was collected does not
+     * build it again. Only the last indexes used are kept.
+     *
+     * @param record     Record of the song.
+     * @param frameIndex Frame index of the song.
+     */
+    void keepFrameIndex(int record, CompletableFuture<FrameIndex> frameIndex) {
+        synchronized (frameIndexes) {
+            frameIndexes.put(record, frameIndex);
+        }
+    }
+
+    /**
+     * @param record Record of a song, see {@link #add(Song)}.
+     * @return the song of the record, the same object while it is in use.
+     */
+    public Song get(int record) {
+        if (record < 0 || record >= size) throw new IndexOutOfBoundsException("Record " + record + " of " + size);
+        SongReference reference = songs.get(record);
+        Song song = reference != null ? reference.get() : null;
+        if (song != null) return song;
+
+        expungeUnusedSongs();
+        Song read = read(record);
+        SongReference newReference = new SongReference(read, record, unusedSongs);
+        while (true) { // Another thread may read the same record, only one song is kept.
+            reference = songs.putIfAbsent(record, newReference);
+            if (reference == null) return read;
+            song = reference.get();
+            if (song != null) return song;
+            if (songs.replace(record, reference, newReference)) return read;
+        }
+    }
+
+    /**
+     * @param record Record of a song, see {@link #add(Song)}.
+     * @return the length of the song in milliseconds, without reading the song.
+     */
+    public float getMsLength(int record) {
+        if (record < 0 || record >= size) throw new IndexOutOfBoundsException("Record " + record + " of " + size);
+        return recordChunks[record / RECORDS_PER_CHUNK].getFloat((record % RECORDS_PER_CHUNK) * RECORD_BYTES + MS_LENGTH);
+    }
+
+    /**
+     * @param records Records of songs.
+     * @return a list that reads the song of each record when it is asked for, instead of holding them.
+     */
+    public List<Song> view(int[] records) {
+        int[] copy = Arrays.copyOf(records, records.length);
+        return new AbstractList<>() {
+            @Override
+            public Song get(int index) {
+                return SongStore.this.get(copy[index]);
+            }
+
+            @Override
+            public int size() {
+                return copy.length;
+            }
+        };
+    }
+
+    private Song read(int record) {
+        ByteBuffer chunk = recordChunks[record / RECORDS_PER_CHUNK];
+        int position = (record % RECORDS_PER_CHUNK) * RECORD_BYTES;
+        String[] fields = new String[FIELDS];
+        for (int i = 0; i < FIELDS; i++) {
+            fields[i] = readString(chunk.getLong(position + i * 8));
+        }
+        float msLength = chunk.getFloat(position + MS_LENGTH);
+        Song song = new Song(fields[0], fields[1], fields[2], fields[3], fields[4], SongLoader.formatLength(msLength),
+                msLength, fields[5], chunk.getInt(position + FILE_SIZE), chunk.getInt(position + NUM_FRAMES),
+                chunk.getFloat(position + MS_PER_FRAME));
+        song.setLengthExact(chunk.get(position + LENGTH_EXACT) != 0);
+        synchronized (frameIndexes) {
+            song.setFrameIndex(frameIndexes.get(record)); // The file is mapped again when it is streamed.
+        }
+        song.setStored(this, record);
+        return song;
+    }
+
+    private static void writeLength(ByteBuffer chunk, int position, Song song) {
+        chunk.putFloat(position + MS_LENGTH, song.getMsLength());
+        chunk.putInt(position + NUM_FRAMES, song.getNumFrames());
+        chunk.putFloat(position + MS_PER_FRAME, song.getMsPerFrame());
+        chunk.put(position + LENGTH_EXACT, (byte) (song.isLengthExact() ? 1 : 0));
+    }
+
+    /**
+     * @return the offset of the string, or -1 if it is null.
+     */
+    private long writeString(String string) throws IOException {
+        if (string == null) return -1;
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        if (4 + bytes.length > STRING_CHUNK_BYTES) throw new IOException("String too long: " + bytes.length + " bytes");
+        if (stringEnd % STRING_CHUNK_BYTES + 4 + bytes.length > STRING_CHUNK_BYTES) { // Strings don't cross chunks.
+            stringEnd += STRING_CHUNK_BYTES - stringEnd % STRING_CHUNK_BYTES;
+        }
+        long offset = stringEnd;
+        int chunk = (int) (offset / STRING_CHUNK_BYTES);
+        if (chunk == stringChunks.length) {
+            stringChunks = grow(stringChunks, stringFile, STRING_CHUNK_BYTES);
+        }
+        int position = (int) (offset % STRING_CHUNK_BYTES);
+        stringChunks[chunk].putInt(position, bytes.length);
+        stringChunks[chunk].put(position + 4, bytes);
+        stringEnd += 4 + bytes.length;
+        return offset;
+    }
+
+    private String readString(long offset) {
+        if (offset < 0) return null;
+        ByteBuffer chunk = stringChunks[(int) (offset / STRING_CHUNK_BYTES)];
+        int position = (int) (offset % STRING_CHUNK_BYTES);
+        byte[] bytes = new byte[chunk.getInt(position)];
+        chunk.get(position + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer recordChunk(int record) throws IOException {
+        int chunk = record / RECORDS_PER_CHUNK;
+        if (chunk == recordChunks.length) {
+            recordChunks = grow(recordChunks, recordFile, RECORDS_PER_CHUNK * RECORD_BYTES);
+        }
+        return recordChunks[chunk];
+    }
+
+    /**
+     * @return the chunks with a new chunk mapped at the end of the file.
+     */
+    private static MappedByteBuffer[] grow(MappedByteBuffer[] chunks, FileChannel file, int chunkBytes)
+            throws IOException {
+        MappedByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+        grown[chunks.length] = file.map(FileChannel.MapMode.READ_WRITE, (long) chunks.length * chunkBytes, chunkBytes);
+        return grown;
+    }
+
+    private static FileChannel openTemporary(String prefix) throws IOException {
+        deleteStale(prefix);
+        Path file = Files.createTempFile(prefix, ".store");
+        file.toFile().deleteOnExit();
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.lock(); // Released when the program exits, the file is in use until then.
+        return channel;
+    }
+
+    /**
+     * Deletes the files of the stores that are not locked anymore, left by programs that were killed before
+     * deleting them on exit.
+     */
+    private static void deleteStale(String prefix) {
+        Path directory = Path.of(System.getProperty("java.io.tmpdir"));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*.store")) {
+            for (Path file : files) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                     FileLock lock = channel.tryLock()) {
+                    if (lock != null) Files.delete(file);
+                } catch (IOException | OverlappingFileLockException e) {
+                    // Used by another store or already deleted.
+                }
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Old store files not deleted", e); // Only the old files are left.
+        }
+    }
+
+    /**
+     * Forgets the songs that are not used anymore.
+     */
+    private void expungeUnusedSongs() {
+        SongReference reference;
+        while ((reference = (SongReference) unusedSongs.poll()) != null) {
+            songs.remove(reference.record, reference);
+        }
+    }
+
+    private static final class SongReference extends WeakReference<Song> {
+        private final int record;
+
+        private SongReference(Song song, int record, ReferenceQueue<Song> queue) {
+            super(song, queue);
+            this.record = record;
+        }
+    }
+}
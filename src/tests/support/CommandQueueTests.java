@@ -0,0 +1,104 @@
+package support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandQueueTests {
+    private final CommandQueue queue = new CommandQueue("commands");
+    private final List<String> ran = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void runsTheCommandsInOrder() throws InterruptedException {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String name = "command " + i;
+            expected.add(name);
+            queue.submit(() -> ran.add(name));
+        }
+        awaitQueue();
+        assertEquals(expected, ran);
+        assertEquals(0, queue.getCollapsed());
+    }
+
+    @Test
+    void absorbsLaterCommandsIntoTheLastWaitingOne() throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        queue.submit(new Next(() -> { // Already taken, so it can't absorb anymore.
+            running.countDown();
+            await(release);
+        }));
+        await(running);
+
+        for (int i = 0; i < 5; i++) {
+            queue.submit(new Next(null)); // Many clicks on "Next".
+        }
+        queue.submit(() -> ran.add("seek"));
+        queue.submit(new Next(null)); // Not absorbed by the seek, which runs in between.
+        release.countDown();
+        awaitQueue();
+
+        assertEquals(List.of("next 1", "next 5", "seek", "next 1"), ran);
+        assertEquals(4, queue.getCollapsed());
+    }
+
+    @Test
+    void keepsRunningAfterACommandFails() throws InterruptedException {
+        queue.submit(() -> {
+            throw new IllegalStateException("Expected by the test");
+        });
+        queue.submit(() -> ran.add("after"));
+        awaitQueue();
+        assertEquals(List.of("after"), ran);
+    }
+
+    /**
+     * Waits until the commands submitted before were run.
+     */
+    private void awaitQueue() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        queue.submit(done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Skips one song for each click it absorbed, like the "Next" command of the player.
+     */
+    private final class Next implements CommandQueue.Command {
+        private final Runnable body;
+        private int clicks = 1;
+
+        private Next(Runnable body) {
+            this.body = body;
+        }
+
+        @Override
+        public boolean absorb(CommandQueue.Command later) {
+            if (!(later instanceof Next)) return false;
+            clicks++;
+            return true;
+        }
+
+        @Override
+        public void run() {
+            if (body != null) body.run();
+            ran.add("next " + clicks);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package support;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.JavaLayerException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DecodePipelineTests {
+    private static final int FRAMES = 50;
+    private static final int TIMEOUT_MS = 5000;
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void takesEveryFrameOfTheBitstream() throws IOException, JavaLayerException {
+        GatedInputStream file = file();
+        file.open(Integer.MAX_VALUE);
+        DecodePipeline pipeline = new DecodePipeline(new Bitstream(file), new Decoder(), 4);
+        pipeline.start();
+
+        int frames = 0;
+        for (int taken; (taken = pipeline.takeBatch(3)) > 0; frames += taken) {
+            assertTrue(taken <= 3);
+            assertEquals(2 * 1152, pipeline.getFrame(0).getLength()); // Stereo.
+            pipeline.release(taken);
+        }
+        assertEquals(countFrames(), frames);
+        assertTrue(pipeline.isFinished());
+        assertFalse(pipeline.isClosed());
+        assertNull(pipeline.take());
+    }
+
+    @Test
+    void keepsAtMostDepthFramesAhead() throws IOException, JavaLayerException, InterruptedException {
+        GatedInputStream file = file();
+        file.open(Integer.MAX_VALUE);
+        DecodePipeline pipeline = new DecodePipeline(new Bitstream(file), new Decoder(), 4);
+        pipeline.start();
+
+        awaitFrames(pipeline, 4); // Taking a batch doesn't give the frames back, the decoder stays blocked.
+        Thread.sleep(50);
+        assertEquals(4, pipeline.takeBatch(FRAMES));
+        assertEquals(4, pipeline.getDepth());
+        assertEquals(0, pipeline.getUnderruns());
+
+        pipeline.release(1); // Room for one more frame.
+        awaitFrames(pipeline, 4);
+        Thread.sleep(50);
+        assertEquals(4, pipeline.takeBatch(FRAMES));
+        pipeline.close();
+    }
+
+    @Test
+    void countsAnUnderrunWhenPlaybackCatchesUp() throws Exception {
+        GatedInputStream file = file();
+        file.openFrames(2); // The disk is slow after two frames.
+        DecodePipeline pipeline = new DecodePipeline(new Bitstream(file), new Decoder(), 4);
+        pipeline.start();
+
+        pipeline.awaitReady(); // Before the first frame, not an underrun.
+        awaitFrames(pipeline, 2);
+        pipeline.release(pipeline.takeBatch(FRAMES));
+        assertEquals(0, pipeline.getUnderruns());
+        assertFalse(pipeline.isReady());
+
+        AtomicInteger taken = new AtomicInteger(-1);
+        Thread player = new Thread(() -> {
+            try {
+                taken.set(pipeline.takeBatch(FRAMES));
+            } catch (JavaLayerException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        player.start();
+        awaitUnderruns(pipeline, 1);
+        assertEquals(8, pipeline.getDepth(), "The depth doubles");
+
+        file.openFrames(3);
+        player.join(TIMEOUT_MS);
+        assertFalse(player.isAlive());
+        assertEquals(1, taken.get());
+        pipeline.release(1);
+
+        Thread waiting = new Thread(pipeline::awaitReady);
+        waiting.start();
+        awaitUnderruns(pipeline, 2); // Waiting outside takeBatch is an underrun too.
+        file.open(Integer.MAX_VALUE);
+        waiting.join(TIMEOUT_MS);
+        assertFalse(waiting.isAlive());
+        assertTrue(pipeline.isReady());
+        pipeline.close();
+    }
+
+    @Test
+    void closeWakesAThreadWaitingForAFrame() throws Exception {
+        GatedInputStream file = file();
+        file.openFrames(1);
+        DecodePipeline pipeline = new DecodePipeline(new Bitstream(file), new Decoder(), 4);
+        pipeline.start();
+        awaitFrames(pipeline, 1);
+        pipeline.release(1);
+
+        AtomicInteger taken = new AtomicInteger(-1);
+        Thread player = new Thread(() -> {
+            try {
+                taken.set(pipeline.takeBatch(FRAMES));
+            } catch (JavaLayerException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        player.start();
+        awaitUnderruns(pipeline, 1); // Blocked in takeBatch.
+
+        pipeline.close();
+        player.join(TIMEOUT_MS);
+        assertFalse(player.isAlive());
+        assertEquals(0, taken.get());
+        assertTrue(pipeline.isClosed());
+        assertTrue(pipeline.isReady());
+
+        file.open(Integer.MAX_VALUE); // The decoder stops at the next frame.
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!pipeline.isFinished() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(pipeline.isFinished());
+        assertEquals(0, pipeline.takeBatch(FRAMES));
+    }
+
+    private GatedInputStream file() throws IOException {
+        Path file = folder.resolve("song.mp3");
+        int[] offsets = Mp3Fixtures.write(file, Mp3Fixtures.cbr(FRAMES), -1, false);
+        return new GatedInputStream(Files.readAllBytes(file), offsets);
+    }
+
+    /**
+     * @return number of frames read by a Bitstream alone, JLayer skips the last one before the ID3v1 tag.
+     */
+    private int countFrames() throws IOException, JavaLayerException {
+        GatedInputStream file = file();
+        file.open(Integer.MAX_VALUE);
+        Bitstream bitstream = new Bitstream(file);
+        int frames = 0;
+        while (bitstream.readFrame() != null) {
+            bitstream.closeFrame();
+            frames++;
+        }
+        return frames;
+    }
+
+    /**
+     * Waits until the frames are decoded, without giving them back.
+     */
+    private static void awaitFrames(DecodePipeline pipeline, int frames)
+            throws JavaLayerException, InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (pipeline.takeBatch(FRAMES) < frames && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static void awaitUnderruns(DecodePipeline pipeline, long underruns) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (pipeline.getUnderruns() < underruns && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(underruns, pipeline.getUnderruns());
+    }
+
+    /**
+     * The bytes of a file, served up to a limit. Reads past the limit wait until it moves, like a slow disk.
+     */
+    static final class GatedInputStream extends InputStream {
+        private final int[] offsets; // Offset of each frame, see Mp3Fixtures.write.
+        private final byte[] bytes;
+        private int position = 0;
+        private int limit = 0;
+
+        GatedInputStream(byte[] bytes, int[] offsets) {
+            this.bytes = bytes;
+            this.offsets = offsets;
+        }
+
+        synchronized void open(int limit) {
+            this.limit = Math.min(limit, bytes.length);
+            notifyAll();
+        }
+
+        /**
+         * Serves the bytes needed to decode the first frames. JLayer also reads the header after the last one.
+         */
+        void openFrames(int frames) {
+            open(offsets[frames] + 4);
+        }
+
+        @Override
+        public synchronized int read() throws IOException {
+            if (!await()) return -1;
+            return bytes[position++] & 0xFF;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!await()) return -1;
+            int read = Math.min(len, limit - position);
+            System.arraycopy(bytes, position, b, off, read);
+            position += read;
+            return read;
+        }
+
+        private boolean await() throws InterruptedIOException {
+            while (position >= limit && limit < bytes.length) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            return position < limit;
+        }
+    }
+}
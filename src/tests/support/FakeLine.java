@@ -0,0 +1,75 @@
+package support;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.SourceDataLine;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * SourceDataLine without a sound card, for {@link SessionAudioDevice}. The bytes written are kept until the line is
+ * flushed, like the audio not played yet, and it never runs out of audio.
+ */
+final class FakeLine implements InvocationHandler {
+    final ByteArrayOutputStream written = new ByteArrayOutputStream(); // Written since the last flush.
+    int flushes = 0;
+    Runnable beforeWrite = () -> { }; // Runs in the writing thread, before the bytes are written.
+    private AudioFormat format;
+    private int bufferSize;
+    private boolean open = false;
+    private final SourceDataLine line;
+
+    FakeLine() {
+        line = (SourceDataLine) Proxy.newProxyInstance(FakeLine.class.getClassLoader(),
+                new Class<?>[]{SourceDataLine.class}, this);
+    }
+
+    SourceDataLine line() {
+        return line;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "open":
+                format = (AudioFormat) args[0];
+                bufferSize = args.length > 1 ? (Integer) args[1] : format.getFrameSize() * (int) format.getFrameRate();
+                open = true;
+                return null;
+            case "write":
+                beforeWrite.run();
+                written.write((byte[]) args[0], (Integer) args[1], (Integer) args[2]);
+                return args[2];
+            case "flush":
+                flushes++;
+                written.reset();
+                return null;
+            case "close":
+                open = false;
+                return null;
+            case "isOpen":
+                return open;
+            case "start":
+            case "stop":
+            case "drain":
+                return null;
+            case "available":
+                return 0; // Full, never an underrun.
+            case "getBufferSize":
+                return bufferSize;
+            case "getFormat":
+                return format;
+            case "getMicrosecondPosition":
+                return 0L;
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "FakeLine";
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package support;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FrameIndexTests {
+    @TempDir
+    Path folder;
+
+    @Test
+    void indexesEveryFrameOfACbrFile() throws IOException {
+        assertOffsets(Mp3Fixtures.write(folder.resolve("cbr.mp3"), Mp3Fixtures.cbr(500), -1, false),
+                FrameIndex.build(folder.resolve("cbr.mp3").toString()));
+    }
+
+    @Test
+    void indexesEveryFrameOfAVbrFile() throws IOException {
+        assertOffsets(Mp3Fixtures.write(folder.resolve("vbr.mp3"), Mp3Fixtures.vbr(500, 1), 500, false),
+                FrameIndex.build(folder.resolve("vbr.mp3").toString()));
+    }
+
+    @Test
+    void indexesFramesWithCrc() throws IOException {
+        assertOffsets(Mp3Fixtures.write(folder.resolve("crc.mp3"), Mp3Fixtures.vbr(200, 2), -1, true),
+                FrameIndex.build(folder.resolve("crc.mp3").toString()));
+    }
+
+    @Test
+    void clampsFramesAndTimesOutOfTheFile() throws IOException {
+        int[] offsets = Mp3Fixtures.write(folder.resolve("cbr.mp3"), Mp3Fixtures.cbr(100), -1, false);
+        FrameIndex index = FrameIndex.build(folder.resolve("cbr.mp3").toString());
+
+        assertEquals(offsets[0], index.getOffset(-1));
+        assertEquals(offsets[100], index.getOffset(1000));
+        assertEquals(0, index.getFrameAt(-500));
+        assertEquals(100, index.getFrameAt(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void mapsTimesToTheFramePlaying() throws IOException {
+        Mp3Fixtures.write(folder.resolve("cbr.mp3"), Mp3Fixtures.cbr(100), -1, false);
+        FrameIndex index = FrameIndex.build(folder.resolve("cbr.mp3").toString());
+
+        assertEquals(Mp3Fixtures.MS_PER_FRAME, index.getMsPerFrame());
+        for (int frame = 0; frame < 100; frame++) {
+            assertEquals(frame, index.getFrameAt((int) Math.ceil(frame * Mp3Fixtures.MS_PER_FRAME)));
+            assertEquals(frame, index.getFrameAt((int) ((frame + 1) * Mp3Fixtures.MS_PER_FRAME) - 1));
+        }
+    }
+
+    private static void assertOffsets(int[] offsets, FrameIndex index) {
+        int frames = offsets.length - 1;
+        assertEquals(frames, index.getNumFrames());
+        for (int frame = 0; frame <= frames; frame++) {
+            assertEquals(offsets[frame], index.getOffset(frame), "Offset of frame " + frame);
+        }
+    }
+}
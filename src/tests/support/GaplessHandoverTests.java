@@ -0,0 +1,90 @@
+package support;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.JavaLayerException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The track change done by the playing thread of the player at the end of a song: the next song is opened and decoded
+ * by its own pipeline before the current one ends, and its frames follow the last frame of the current song on the
+ * same device, without a reset.
+ */
+class GaplessHandoverTests {
+    private static final int FRAMES = 40;
+    private static final int PREFETCH_FRAMES = 10; // Frames before the end when the next song is opened.
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void playsTheNextSongRightAfterTheLastFrame() throws IOException, JavaLayerException, InterruptedException {
+        Song first = song("first.mp3");
+        Song second = song("second.mp3");
+        FakeLine line = new FakeLine();
+        SessionAudioDevice device = new SessionAudioDevice(format -> line.line());
+
+        DecodePipeline pipeline = new DecodePipeline(first, 4);
+        pipeline.start();
+        DecodePipeline next = null;
+        int played = 0; // Frames of the first song.
+        int handovers = 0;
+        while (true) {
+            if (handovers == 0 && next == null && first.getNumFrames() - played <= PREFETCH_FRAMES) {
+                next = new DecodePipeline(second, 4);
+                next.start();
+                Thread.sleep(100); // The current song still plays for a while.
+            }
+            int taken = pipeline.takeBatch(2);
+            if (taken == 0) {
+                if (next == null) break;
+                assertTrue(pipeline.isFinished());
+                assertTrue(next.isReady(), "Decoded while the first song was playing");
+                pipeline = next; // No reset, the audio of the first song keeps playing.
+                next = null;
+                handovers++;
+                continue;
+            }
+            int generation = device.getGeneration();
+            for (int i = 0; i < taken; i++) {
+                DecodePipeline.PcmFrame frame = pipeline.getFrame(i);
+                device.setFormat(frame.getFrequency(), frame.getChannels());
+                device.write(generation, frame.getSamples(), 0, frame.getLength());
+            }
+            pipeline.release(taken);
+            played += taken;
+        }
+
+        assertEquals(1, handovers);
+        assertEquals(0, line.flushes);
+        int samples = 2 * 1152; // Stereo.
+        assertEquals((countFrames(first) + countFrames(second)) * samples * 2, line.written.size());
+    }
+
+    private Song song(String name) throws IOException {
+        Path file = folder.resolve(name);
+        Mp3Fixtures.write(file, Mp3Fixtures.cbr(FRAMES), -1, false);
+        float msLength = FRAMES * Mp3Fixtures.MS_PER_FRAME;
+        return new Song(name, name, "Album", "Artist", "2001", SongLoader.formatLength(msLength), msLength,
+                file.toString(), (int) file.toFile().length(), FRAMES, Mp3Fixtures.MS_PER_FRAME);
+    }
+
+    /**
+     * @return number of frames read by a Bitstream alone, JLayer skips the last one before the ID3v1 tag.
+     */
+    private static int countFrames(Song song) throws IOException, JavaLayerException {
+        Bitstream bitstream = new Bitstream(song.getInputStream());
+        int frames = 0;
+        while (bitstream.readFrame() != null) {
+            bitstream.closeFrame();
+            frames++;
+        }
+        return frames;
+    }
+}
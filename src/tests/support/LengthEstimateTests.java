@@ -0,0 +1,84 @@
+package support;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LengthEstimateTests {
+    @TempDir
+    Path folder;
+
+    @Test
+    void countsTheFramesOfACbrFileFromItsBitrate() throws IOException {
+        Path file = folder.resolve("cbr.mp3");
+        Mp3Fixtures.write(file, Mp3Fixtures.cbr(500), -1, false);
+
+        LengthEstimate estimate = LengthEstimate.read(file.toString());
+        assertEquals(500, estimate.getNumFrames());
+        assertEquals(Mp3Fixtures.MS_PER_FRAME, estimate.getMsPerFrame());
+        assertFalse(estimate.isFromVbrHeader());
+    }
+
+    @Test
+    void readsTheFramesOfAVbrFileFromItsXingHeader() throws IOException {
+        Path file = folder.resolve("vbr.mp3");
+        Mp3Fixtures.write(file, Mp3Fixtures.vbr(500, 1), 500, false);
+
+        LengthEstimate estimate = LengthEstimate.read(file.toString());
+        assertEquals(500, estimate.getNumFrames());
+        assertEquals(500 * Mp3Fixtures.MS_PER_FRAME, estimate.getMsLength(), 0.01);
+        assertTrue(estimate.isFromVbrHeader());
+    }
+
+    @Test
+    void findsTheXingHeaderAfterACrc() throws IOException {
+        Path file = folder.resolve("crc.mp3");
+        Mp3Fixtures.write(file, Mp3Fixtures.vbr(300, 2), 300, true);
+
+        LengthEstimate estimate = LengthEstimate.read(file.toString());
+        assertEquals(300, estimate.getNumFrames());
+        assertTrue(estimate.isFromVbrHeader());
+    }
+
+    @Test
+    void estimatesAVbrFileWithoutXingHeaderFromItsFirstFrame() throws IOException {
+        Path file = folder.resolve("vbr.mp3");
+        int[] bitrates = Mp3Fixtures.vbr(500, 3);
+        int[] offsets = Mp3Fixtures.write(file, bitrates, -1, false);
+
+        LengthEstimate estimate = LengthEstimate.read(file.toString());
+        float bytesPerFrame = Mp3Fixtures.bytesPerFrame(bitrates[0]); // Only the bitrate of the first frame is read.
+        assertEquals(Math.round((offsets[500] - offsets[0]) / bytesPerFrame), estimate.getNumFrames());
+        assertFalse(estimate.isFromVbrHeader());
+        assertEquals(500, FrameIndex.build(file.toString()).getNumFrames()); // What refining the length counts.
+    }
+
+    @Test
+    void findsTheFirstFrameAfterLongJunk() throws IOException {
+        Path fixture = folder.resolve("cbr.mp3");
+        Mp3Fixtures.write(fixture, Mp3Fixtures.cbr(100), -1, false);
+        Path file = folder.resolve("junk.mp3");
+        byte[] frames = Files.readAllBytes(fixture);
+        byte[] junk = new byte[100_000 + frames.length]; // More than the bytes read at once to find the frame.
+        System.arraycopy(frames, 0, junk, 100_000, frames.length);
+        Files.write(file, junk);
+
+        assertEquals(100, LengthEstimate.read(file.toString()).getNumFrames());
+    }
+
+    @Test
+    void failsOnFilesWithoutFrames() throws IOException {
+        Path file = folder.resolve("empty.mp3");
+        Files.write(file, new byte[5000]);
+
+        assertThrows(IOException.class, () -> LengthEstimate.read(file.toString()));
+    }
+}
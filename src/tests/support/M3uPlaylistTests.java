@@ -0,0 +1,66 @@
+package support;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class M3uPlaylistTests {
+    @TempDir
+    Path folder;
+
+    @Test
+    void readsThePathsWritten() throws IOException {
+        List<Song> songs = new ArrayList<>();
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Path path = folder.resolve("music " + i % 3).resolve(i + ".mp3");
+            songs.add(new Song("uuid-" + i, "Title " + i, "Album", "Artist", "2000", "0:03:30", 210_000,
+                    path.toString(), 1000, 8038, 26.12f));
+            paths.add(path);
+        }
+        Path playlist = folder.resolve("queue.m3u8");
+        M3uPlaylist.write(songs, playlist);
+
+        List<Path> read = new ArrayList<>();
+        M3uPlaylist.read(playlist, read::add);
+        assertEquals(paths, read);
+        assertTrue(Files.readString(playlist).startsWith("#EXTM3U"));
+    }
+
+    @Test
+    void resolvesRelativeEntriesAndSkipsTheOthers() throws IOException {
+        Path absolute = folder.resolve("absolute.mp3").toAbsolutePath();
+        String text = "\uFEFF#EXTM3U\n"
+                + "#EXTINF:210,Artist - Title\n"
+                + "relative.mp3\n"
+                + "\n"
+                + "  sub/folder.mp3  \r\n"
+                + absolute + "\n"
+                + absolute.toUri() + "\n"
+                + "http://example.com/stream.mp3\n";
+        Path playlist = folder.resolve("list.m3u");
+        Files.writeString(playlist, text, StandardCharsets.UTF_8);
+
+        List<Path> read = new ArrayList<>();
+        M3uPlaylist.read(playlist, read::add);
+        Path base = playlist.toAbsolutePath().getParent();
+        assertEquals(List.of(base.resolve("relative.mp3"), base.resolve("sub/folder.mp3"), absolute, absolute), read);
+    }
+
+    @Test
+    void recognizesM3uExtensions() {
+        assertTrue(M3uPlaylist.isM3uFile(Path.of("list.m3u")));
+        assertTrue(M3uPlaylist.isM3uFile(Path.of("LIST.M3U8")));
+        assertFalse(M3uPlaylist.isM3uFile(Path.of("list.mp3")));
+    }
+}
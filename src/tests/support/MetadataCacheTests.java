@@ -0,0 +1,121 @@
+package support;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetadataCacheTests {
+    @TempDir
+    Path folder;
+
+    @Test
+    void replaysTheLastRecordOfEachFile() throws IOException {
+        Path cacheFile = folder.resolve("metadata.cache");
+        MetadataCache cache = new MetadataCache(cacheFile);
+        cache.put(song("a.mp3", "A", 1000, false));
+        cache.put(song("b.mp3", "B", 2000, false));
+        cache.put(song("a.mp3", "A again", 1500, true)); // Refined length.
+
+        MetadataCache replayed = new MetadataCache(cacheFile);
+        assertEquals(2, replayed.size());
+        Song a = replayed.get(folder.resolve("a.mp3"));
+        assertEquals("A again", a.getTitle());
+        assertEquals(1500f, a.getMsLength());
+        assertEquals("0:00:01", a.getStrLength());
+        assertTrue(a.isLengthExact());
+        Song b = replayed.get(folder.resolve("b.mp3"));
+        assertSong(song("b.mp3", "B", 2000, false), b);
+    }
+
+    @Test
+    void forgetsFilesThatChanged() throws IOException {
+        Path cacheFile = folder.resolve("metadata.cache");
+        new MetadataCache(cacheFile).put(song("a.mp3", "A", 1000, false));
+        Files.write(folder.resolve("a.mp3"), new byte[200]); // Another size.
+
+        assertNull(new MetadataCache(cacheFile).get(folder.resolve("a.mp3")));
+    }
+
+    @Test
+    void keepsTheRecordsBeforeACutRecord() throws IOException {
+        Path cacheFile = folder.resolve("metadata.cache");
+        MetadataCache cache = new MetadataCache(cacheFile);
+        cache.put(song("a.mp3", "A", 1000, false));
+        cache.put(song("b.mp3", "B", 2000, false));
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5); // A crash while writing the last record.
+        }
+
+        MetadataCache replayed = new MetadataCache(cacheFile);
+        assertNotNull(replayed.get(folder.resolve("a.mp3")));
+        assertNull(replayed.get(folder.resolve("b.mp3")));
+
+        replayed.put(song("c.mp3", "C", 3000, false)); // Appended after the records kept, not after the cut one.
+        MetadataCache again = new MetadataCache(cacheFile);
+        assertEquals(2, again.size());
+        assertSong(song("c.mp3", "C", 3000, false), again.get(folder.resolve("c.mp3")));
+    }
+
+    @Test
+    void compactsTheReplacedRecordsWhileRunning() throws IOException {
+        Path cacheFile = folder.resolve("metadata.cache");
+        MetadataCache cache = new MetadataCache(cacheFile);
+        cache.put(song("a.mp3", "A 0", 1000, false));
+        long recordSize = Files.size(cacheFile);
+        for (int i = 1; i < 100; i++) {
+            cache.put(song("a.mp3", "A " + i, 1000, false));
+            assertTrue(Files.size(cacheFile) <= recordSize * 3, "At most two records of the file");
+        }
+        cache.put(song("b.mp3", "B", 2000, false)); // Appended after the rewritten log.
+
+        MetadataCache replayed = new MetadataCache(cacheFile);
+        assertEquals(2, replayed.size());
+        assertEquals("A 99", replayed.get(folder.resolve("a.mp3")).getTitle());
+        assertSong(song("b.mp3", "B", 2000, false), replayed.get(folder.resolve("b.mp3")));
+    }
+
+    @Test
+    void keepsTagsLongerThanWriteUtfAllows() throws IOException {
+        Path cacheFile = folder.resolve("metadata.cache");
+        String title = "\u00e9".repeat(40000); // 80000 bytes in UTF-8.
+        new MetadataCache(cacheFile).put(song("a.mp3", title, 1000, false));
+
+        MetadataCache replayed = new MetadataCache(cacheFile);
+        assertSong(song("a.mp3", title, 1000, false), replayed.get(folder.resolve("a.mp3")));
+    }
+
+    private Song song(String name, String title, float msLength, boolean lengthExact) throws IOException {
+        Path file = folder.resolve(name);
+        if (!Files.exists(file)) {
+            Files.write(file, new byte[100]);
+        }
+        Song song = new Song("uuid", title, "Album", "Artist", "2001", SongLoader.formatLength(msLength), msLength,
+                file.toString(), 100, Math.round(msLength / Mp3Fixtures.MS_PER_FRAME), Mp3Fixtures.MS_PER_FRAME);
+        song.setLengthExact(lengthExact);
+        return song;
+    }
+
+    private static void assertSong(Song expected, Song actual) {
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getAlbum(), actual.getAlbum());
+        assertEquals(expected.getArtist(), actual.getArtist());
+        assertEquals(expected.getYear(), actual.getYear());
+        assertEquals(expected.getStrLength(), actual.getStrLength());
+        assertEquals(expected.getMsLength(), actual.getMsLength());
+        assertEquals(expected.getFilePath(), actual.getFilePath());
+        assertEquals(expected.getFileSize(), actual.getFileSize());
+        assertEquals(expected.getNumFrames(), actual.getNumFrames());
+        assertEquals(expected.getMsPerFrame(), actual.getMsPerFrame());
+        assertEquals(expected.isLengthExact(), actual.isLengthExact());
+    }
+}
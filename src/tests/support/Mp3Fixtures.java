@@ -0,0 +1,146 @@
+package support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Writes small MP3 files for the tests. Only the headers are valid, the side info and audio data are zeros, which is
+ * enough for the classes that read the headers. The frames are MPEG 1 Layer III, 44100 Hz, joint stereo, between an
+ * ID3v2 tag and an ID3v1 tag. Frames are padded like an encoder does, to keep the average size of their bitrate.
+ * The frames, Xing header and ID3v2 tag are also used by {@link FixtureGenerator}, which fills the frames with data
+ * that can be decoded.
+ */
+final class Mp3Fixtures {
+    static final int CBR_BITRATE = 9; // 128 kbps.
+    static final float MS_PER_FRAME = 1152 * 1000f / 44100;
+
+    static final int[] BITRATES = {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320};
+    static final int SIDE_INFO_SIZE = 32; // Of a stereo frame.
+    private static final int ID3V2_SIZE = 1000;
+
+    private Mp3Fixtures() {
+    }
+
+    /**
+     * @param frames Number of frames.
+     * @return bitrate indexes of a CBR file.
+     */
+    static int[] cbr(int frames) {
+        int[] bitrates = new int[frames];
+        Arrays.fill(bitrates, CBR_BITRATE);
+        return bitrates;
+    }
+
+    /**
+     * @param frames Number of frames.
+     * @param seed   Seed of the bitrates.
+     * @return bitrate indexes of a VBR file.
+     */
+    static int[] vbr(int frames, long seed) {
+        Random random = new Random(seed);
+        int[] bitrates = new int[frames];
+        for (int i = 0; i < frames; i++) {
+            bitrates[i] = 1 + random.nextInt(BITRATES.length - 1);
+        }
+        return bitrates;
+    }
+
+    /**
+     * Writes the file.
+     *
+     * @param file       File written.
+     * @param bitrates   Bitrate index of each frame, see {@link #cbr(int)} and {@link #vbr(int, long)}.
+     * @param xingFrames Number of frames written in a Xing header, in an extra frame before the others, or -1 for
+     *                   no Xing header.
+     * @param crc        True if the headers say a CRC follows them.
+     * @return the offset of each frame in the file, including the Xing frame, and the end of the last frame.
+     */
+    static int[] write(Path file, int[] bitrates, int xingFrames, boolean crc) throws IOException {
+        int remainder = 0; // Bytes of the frames written so far over their size without padding, times 44100.
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(id3v2Tag(ID3V2_SIZE));
+
+        int frames = bitrates.length + (xingFrames >= 0 ? 1 : 0);
+        int[] offsets = new int[frames + 1];
+        int frame = 0;
+        if (xingFrames >= 0) {
+            offsets[frame++] = out.size();
+            out.write(xingFrame(crc, xingFrames, -1));
+        }
+        for (int bitrate : bitrates) {
+            offsets[frame++] = out.size();
+            remainder += 144 * BITRATES[bitrate] * 1000 % 44100;
+            out.write(frame(bitrate, crc, remainder >= 44100));
+            remainder %= 44100;
+        }
+        offsets[frame] = out.size();
+
+        byte[] id3v1 = new byte[128];
+        id3v1[0] = 'T';
+        id3v1[1] = 'A';
+        id3v1[2] = 'G';
+        out.write(id3v1);
+        Files.write(file, out.toByteArray());
+        return offsets;
+    }
+
+    /**
+     * @param bitrate Bitrate index.
+     * @return the average size of the frames, with padding.
+     */
+    static float bytesPerFrame(int bitrate) {
+        return 144f * BITRATES[bitrate] * 1000 / 44100;
+    }
+
+    /**
+     * @param bitrate Bitrate index.
+     * @param crc     True if the header says a CRC follows it.
+     * @param padding True for a frame one byte longer.
+     * @return the 4 bytes of the frame header.
+     */
+    static int header(int bitrate, boolean crc, boolean padding) {
+        return 0xFFFA0044 | (crc ? 0 : 1) << 16 | bitrate << 12 | (padding ? 1 : 0) << 9;
+    }
+
+    /**
+     * @return a frame with its header, the rest is zeros.
+     */
+    static byte[] frame(int bitrate, boolean crc, boolean padding) {
+        byte[] frame = new byte[144 * BITRATES[bitrate] * 1000 / 44100 + (padding ? 1 : 0)];
+        ByteBuffer.wrap(frame).putInt(header(bitrate, crc, padding));
+        return frame;
+    }
+
+    /**
+     * @param crc    True if the header says a CRC follows it.
+     * @param frames Number of frames written in the Xing header.
+     * @param bytes  Size of the frames after the Xing frame, written with the size of the Xing frame, or -1 to
+     *               only write the number of frames.
+     * @return a silent frame with a Xing header, like the encoders write before the frames of VBR files.
+     */
+    static byte[] xingFrame(boolean crc, int frames, int bytes) {
+        byte[] xing = frame(CBR_BITRATE, crc, false);
+        ByteBuffer buffer = ByteBuffer.wrap(xing, 4 + (crc ? 2 : 0) + SIDE_INFO_SIZE, 16)
+                .put(new byte[]{'X', 'i', 'n', 'g'})
+                .putInt(bytes >= 0 ? 0x3 : 0x1) // Which fields are present.
+                .putInt(frames);
+        if (bytes >= 0) buffer.putInt(xing.length + bytes);
+        return xing;
+    }
+
+    /**
+     * @param size Size of the tag, including its 10 bytes header.
+     * @return an ID3v2.3 tag with only padding, the song gets the name of its file.
+     */
+    static byte[] id3v2Tag(int size) {
+        byte[] tag = new byte[size]; // Syncsafe size of the tag after its header.
+        ByteBuffer.wrap(tag).put(new byte[]{'I', 'D', '3', 3, 0, 0, 0, 0, (byte) ((size - 10) >> 7),
+                (byte) ((size - 10) & 0x7F)});
+        return tag;
+    }
+}
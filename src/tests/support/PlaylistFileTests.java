@@ -0,0 +1,87 @@
+package support;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlaylistFileTests {
+    @TempDir
+    Path folder;
+
+    @Test
+    void loadsTheSongsSaved() throws IOException {
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 300; i++) { // Fields repeat, like albums and folders do.
+            Song song = new Song("uuid-" + i, "T\u00edtulo " + i, "Album " + i / 12, "Artist " + i / 40,
+                    String.valueOf(1990 + i % 7), SongLoader.formatLength(1000f * i), 1000f * i,
+                    folder.resolve("folder " + i / 50).resolve(i + ".mp3").toString(), 4000 * i, 38 * i, 26.12f);
+            song.setLengthExact(i % 3 == 0);
+            songs.add(song);
+        }
+        Path file = folder.resolve("queue" + PlaylistFile.EXTENSION);
+        PlaylistFile.save(songs, file);
+
+        List<Song> loaded = PlaylistFile.load(file);
+        assertEquals(songs.size(), loaded.size());
+        HashSet<String> uuids = new HashSet<>();
+        for (int i = 0; i < songs.size(); i++) {
+            Song expected = songs.get(i);
+            Song song = loaded.get(i);
+            assertEquals(expected.getTitle(), song.getTitle());
+            assertEquals(expected.getAlbum(), song.getAlbum());
+            assertEquals(expected.getArtist(), song.getArtist());
+            assertEquals(expected.getYear(), song.getYear());
+            assertEquals(expected.getStrLength(), song.getStrLength());
+            assertEquals(expected.getMsLength(), song.getMsLength());
+            assertEquals(expected.getFilePath(), song.getFilePath());
+            assertEquals(expected.getFileSize(), song.getFileSize());
+            assertEquals(expected.getNumFrames(), song.getNumFrames());
+            assertEquals(expected.getMsPerFrame(), song.getMsPerFrame());
+            assertEquals(expected.isLengthExact(), song.isLengthExact());
+            assertTrue(uuids.add(song.getUuid()), "Every song has its own ID");
+        }
+    }
+
+    @Test
+    void loadsAnEmptyPlaylist() throws IOException {
+        Path file = folder.resolve("empty" + PlaylistFile.EXTENSION);
+        PlaylistFile.save(List.of(), file);
+
+        assertTrue(PlaylistFile.load(file).isEmpty());
+    }
+
+    @Test
+    void rejectsFilesThatAreNotPlaylists() throws IOException {
+        Path file = folder.resolve("song.mp3");
+        Files.write(file, new byte[100]);
+
+        assertThrows(IOException.class, () -> PlaylistFile.load(file));
+        assertFalse(PlaylistFile.isPlaylistFile(file));
+    }
+
+    @Test
+    void rejectsCutPlaylists() throws IOException {
+        Song song = new Song("uuid", "Title", "Album", "Artist", "2000", "0:03:00", 180_000,
+                folder.resolve("song.mp3").toString(), 1000, 6891, 26.12f);
+        Path file = folder.resolve("cut" + PlaylistFile.EXTENSION);
+        PlaylistFile.save(List.of(song, song), file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+
+        assertThrows(IOException.class, () -> PlaylistFile.load(file));
+    }
+}
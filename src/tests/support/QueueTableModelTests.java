@@ -0,0 +1,101 @@
+package support;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.event.TableModelEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class QueueTableModelTests {
+    private final SongStore store = new SongStore();
+    private final List<String> events = new ArrayList<>();
+
+    @Test
+    void notifiesOnlyTheRowsAdded() {
+        QueueTableModel model = model(3);
+        model.add(song(3));
+        model.addAll(List.of(song(4), song(5)));
+        model.addAll(List.of());
+
+        assertEquals(List.of("insert 3-3", "insert 4-5"), events);
+        assertEquals(6, model.getRowCount());
+        assertEquals("Title 5", model.getValueAt(5, 0));
+    }
+
+    @Test
+    void notifiesOnlyTheRowRemoved() {
+        QueueTableModel model = model(5);
+        model.remove(1);
+        model.remove(3); // The last one.
+
+        assertEquals(List.of("delete 1-1", "delete 3-3"), events);
+        assertEquals(3, model.getRowCount());
+        assertEquals(List.of("Title 0", "Title 2", "Title 3"), titles(model));
+    }
+
+    @Test
+    void notifiesTheRowUpdated() {
+        QueueTableModel model = model(3);
+        model.update(2);
+        assertEquals(List.of("update 2-2"), events);
+    }
+
+    @Test
+    void updatesTheRowsWhenOnlyTheOrderChanges() {
+        QueueTableModel model = model(3);
+        int[] records = {model.getSong(2).getRecord(), model.getSong(0).getRecord(), model.getSong(1).getRecord()};
+        model.setRecords(records); // Shuffled.
+        assertEquals(List.of("update 0-2"), events);
+        assertEquals(List.of("Title 2", "Title 0", "Title 1"), titles(model));
+
+        model.setRecords(new int[]{records[0]});
+        assertEquals(List.of("update 0-2", "update 0-" + Integer.MAX_VALUE), events); // Everything changed.
+        assertEquals(List.of("Title 2"), titles(model));
+    }
+
+    @Test
+    void growsPastItsInitialCapacity() {
+        QueueTableModel model = model(0);
+        for (int i = 0; i < 40; i++) {
+            model.add(song(i));
+        }
+        assertEquals(40, model.getRowCount());
+        assertEquals(40, events.size());
+        assertEquals("insert 39-39", events.get(39));
+        assertEquals("Title 39", model.getValueAt(39, 0));
+    }
+
+    private QueueTableModel model(int songs) {
+        int[] records = new int[songs];
+        for (int i = 0; i < songs; i++) {
+            records[i] = store.add(song(i));
+        }
+        QueueTableModel model = new QueueTableModel(store, records);
+        model.addTableModelListener(this::record);
+        return model;
+    }
+
+    private void record(TableModelEvent event) {
+        String type = switch (event.getType()) {
+            case TableModelEvent.INSERT -> "insert";
+            case TableModelEvent.DELETE -> "delete";
+            default -> "update";
+        };
+        events.add(type + " " + event.getFirstRow() + "-" + event.getLastRow());
+    }
+
+    private static List<String> titles(QueueTableModel model) {
+        List<String> titles = new ArrayList<>();
+        for (int row = 0; row < model.getRowCount(); row++) {
+            titles.add((String) model.getValueAt(row, 0));
+        }
+        return titles;
+    }
+
+    private static Song song(int i) {
+        return new Song("uuid " + i, "Title " + i, "Album", "Artist", "2001", "0:03:30", 210_000,
+                "/music/" + i + ".mp3", 3_360_000, 8038, Mp3Fixtures.MS_PER_FRAME);
+    }
+}
@@ -0,0 +1,156 @@
+package support;
+
+import org.junit.jupiter.api.Test;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchIndexTests {
+    private static final String[] WORDS = {"Caf\u00e9", "\u00c9dith", "Bj\u00f6rk", "Mot\u00f6rhead", "S\u00e3o",
+            "Paulo", "night", "Nightwish", "knight", "blue", "Blues", "love", "glove", "The", "a", "of", "x", "ab", "abc"};
+    private static final String[] YEARS = {"1999", "2001"};
+
+    private final SongStore store = new SongStore();
+    private final SearchIndex index = new SearchIndex(store);
+    private final List<Song> songs = new ArrayList<>(); // Every song created, so the store doesn't read them again.
+    private final List<String> texts = new ArrayList<>(); // Normalized text of each song.
+    private final Random random = new Random(1);
+
+    @Test
+    void findsTheSameSongsAsCheckingEverySong() {
+        boolean[] indexed = addSongs(3000);
+        assertSearches(indexed);
+
+        for (int i = 0; i < 3000; i++) { // Enough to compact the lists of records.
+            int record = random.nextInt(songs.size());
+            index.remove(record);
+            indexed[record] = false;
+        }
+        assertEquals(count(indexed), index.size());
+        assertSearches(indexed);
+
+        for (int record = 0; record < songs.size(); record += 3) {
+            index.add(record); // Removed records indexed again.
+            indexed[record] = true;
+        }
+        assertSearches(indexed);
+    }
+
+    @Test
+    void setsTheRecordsOfTheQueue() {
+        boolean[] indexed = addSongs(500);
+        int[] records = new int[songs.size()];
+        int count = 0;
+        for (int record = 0; record < songs.size(); record++) {
+            indexed[record] = random.nextInt(3) > 0;
+            if (indexed[record]) records[count++] = record;
+        }
+        index.setRecords(records, count);
+
+        assertEquals(count, index.size());
+        assertSearches(indexed);
+    }
+
+    @Test
+    void keepsQueriesUpToDate() {
+        SearchIndex.Query query = index.query("bjork");
+        int record = store.add(song("Joga", "Homogenic", "Bj\u00f6rk", "1997"));
+        assertFalse(query.matches(record));
+
+        index.add(record);
+        assertTrue(query.matches(record));
+
+        index.remove(record);
+        assertFalse(query.matches(record));
+    }
+
+    @Test
+    void matchesEverySongWithAnEmptyQuery() {
+        int record = store.add(song("Title", "Album", "Artist", "2000"));
+        index.add(record);
+
+        assertTrue(index.query("").isEmpty());
+        assertTrue(index.query("   ").matches(record));
+    }
+
+    /**
+     * Adds songs with random words to the store and the index.
+     *
+     * @return the records indexed.
+     */
+    private boolean[] addSongs(int count) {
+        boolean[] indexed = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            int record = store.add(song(words(3), words(2), words(2), YEARS[random.nextInt(YEARS.length)]));
+            index.add(record);
+            indexed[record] = true;
+        }
+        return indexed;
+    }
+
+    private void assertSearches(boolean[] indexed) {
+        for (int i = 0; i < 300; i++) {
+            String query = query();
+            SearchIndex.Query search = index.query(query);
+            String[] words = normalize(query).strip().split("\\s+");
+            for (int record = 0; record < indexed.length; record++) {
+                String text = texts.get(record);
+                boolean expected = indexed[record] && Arrays.stream(words).allMatch(text::contains);
+                assertEquals(expected, search.matches(record), "'" + query + "' on record " + record);
+            }
+        }
+    }
+
+    /**
+     * @return one to three words, whole or parts of them, in any case and with or without accents.
+     */
+    private String query() {
+        StringBuilder query = new StringBuilder();
+        for (int i = random.nextInt(3); i >= 0; i--) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            int start = random.nextInt(word.length());
+            word = word.substring(start, start + 1 + random.nextInt(word.length() - start));
+            if (random.nextBoolean()) word = word.toUpperCase(Locale.ROOT);
+            if (random.nextBoolean()) word = normalize(word);
+            query.append(word).append(' ');
+        }
+        return query.toString();
+    }
+
+    private static String normalize(String text) {
+        return Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+    }
+
+    private static int count(boolean[] indexed) {
+        int count = 0;
+        for (boolean record : indexed) {
+            if (record) count++;
+        }
+        return count;
+    }
+
+    private String words(int count) {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) words.append(' ');
+            words.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return words.toString();
+    }
+
+    private Song song(String title, String album, String artist, String year) {
+        Song song = new Song("uuid-" + songs.size(), title, album, artist, year, "0:03:30", 210_000,
+                "/music/" + songs.size() + ".mp3", 3_360_000, 8038, 26.12f);
+        songs.add(song);
+        texts.add(normalize(String.join("\n", title, album, artist, year)));
+        return song;
+    }
+}
@@ -0,0 +1,72 @@
+package support;
+
+import javazoom.jl.decoder.JavaLayerException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class SessionAudioDeviceTests {
+    private final List<FakeLine> lines = new ArrayList<>();
+    private final SessionAudioDevice device = new SessionAudioDevice(format -> {
+        FakeLine line = new FakeLine();
+        lines.add(line);
+        return line.line();
+    });
+
+    @Test
+    void writesTheSamplesOfTheCurrentGeneration() throws JavaLayerException {
+        device.setFormat(44100, 2);
+        device.write(device.getGeneration(), new short[]{0x0102, -2, 3}, 1, 2);
+
+        assertEquals(1, lines.size());
+        assertArrayEquals(new byte[]{-2, -1, 3, 0}, lines.get(0).written.toByteArray()); // Little endian.
+    }
+
+    @Test
+    void dropsTheSamplesTakenBeforeAReset() throws JavaLayerException {
+        device.setFormat(44100, 2);
+        int generation = device.getGeneration();
+        device.reset(); // The song changed after the samples were taken.
+        assertNotEquals(generation, device.getGeneration());
+
+        device.write(generation, new short[1152], 0, 1152);
+        assertEquals(0, lines.get(0).written.size());
+
+        device.write(device.getGeneration(), new short[1152], 0, 1152);
+        assertEquals(2 * 1152, lines.get(0).written.size());
+    }
+
+    @Test
+    void discardsAWriteThatCrossesAReset() throws JavaLayerException {
+        device.setFormat(44100, 2);
+        FakeLine line = lines.get(0);
+        line.beforeWrite = () -> { // Another thread changes the song while the samples are being written.
+            line.beforeWrite = () -> { };
+            device.reset();
+        };
+
+        device.write(device.getGeneration(), new short[1152], 0, 1152);
+        assertEquals(0, line.written.size(), "Flushed after the write");
+        assertEquals(2, line.flushes); // By the reset, then after the write.
+    }
+
+    @Test
+    void keepsTheLineWhileTheFormatIsTheSame() throws JavaLayerException {
+        device.setFormat(44100, 2);
+        device.write(device.getGeneration(), new short[1152], 0, 1152);
+        device.reset();
+        device.setFormat(44100, 2); // The next song.
+        device.write(device.getGeneration(), new short[1152], 0, 1152);
+        assertEquals(1, lines.size());
+
+        device.setFormat(22050, 1);
+        device.write(device.getGeneration(), new short[576], 0, 576);
+        assertEquals(2, lines.size());
+        assertEquals(2 * 576, lines.get(1).written.size());
+    }
+}
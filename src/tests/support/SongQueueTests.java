@@ -0,0 +1,117 @@
+package support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SongQueueTests {
+    private final SongQueue queue = new SongQueue(new SongStore());
+    private final List<Song> songs = new ArrayList<>(); // Every song created, so the store returns the same objects.
+
+    @Test
+    void keepsBothOrdersThroughRandomChanges() {
+        List<Song> added = new ArrayList<>(); // Expected order without the shuffle.
+        List<Song> shuffled = null; // Expected shuffled order, null if not shuffled.
+        Random random = new Random(1);
+        for (int step = 0; step < 3000; step++) {
+            int operation = random.nextInt(20);
+            if (operation < 10 || added.isEmpty()) {
+                Song song = song();
+                queue.add(song);
+                added.add(song);
+                if (shuffled != null) shuffled.add(song);
+            }
+            else if (operation < 17) {
+                int index = random.nextInt(added.size());
+                Song removed = shuffled != null ? shuffled.remove(index) : added.remove(index);
+                if (shuffled != null) added.remove(removed);
+                queue.remove(index);
+                assertEquals(-1, queue.indexOf(removed));
+            }
+            else if (operation < 19) {
+                Song head = random.nextBoolean() ? added.get(random.nextInt(added.size())) : null;
+                queue.shuffle(head, random);
+                shuffled = new ArrayList<>(queue.getSongs());
+                assertEquals(new HashSet<>(added), new HashSet<>(shuffled), "The shuffle is a permutation");
+                if (head != null) assertSame(head, queue.get(0));
+            }
+            else {
+                queue.unshuffle();
+                shuffled = null;
+            }
+            assertQueue(shuffled != null ? shuffled : added);
+        }
+    }
+
+    @Test
+    void shufflesLikeCollectionsShuffle() {
+        List<Song> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(song());
+            queue.add(expected.get(i));
+        }
+        queue.shuffle(null, new Random(5));
+        Collections.shuffle(expected, new Random(5));
+
+        assertQueue(expected);
+    }
+
+    @Test
+    void restoresTheOrderAddedWhenUnshuffled() {
+        List<Song> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            expected.add(song());
+            queue.add(expected.get(i));
+        }
+        queue.shuffle(expected.get(20), new Random(2));
+        Song removed = queue.get(10);
+        queue.remove(10);
+        Song added = song();
+        queue.add(added);
+        queue.unshuffle();
+
+        expected.remove(removed);
+        expected.add(added);
+        assertFalse(queue.isShuffled());
+        assertQueue(expected);
+    }
+
+    @Test
+    void onlyFindsTheSongsInTheQueue() {
+        Song song = song();
+        queue.add(song);
+
+        assertEquals(0, queue.indexOf(song));
+        assertEquals(-1, queue.indexOf(null));
+        assertEquals(-1, queue.indexOf(song()));
+        assertEquals(-1, new SongQueue(new SongStore()).indexOf(song));
+    }
+
+    private void assertQueue(List<Song> expected) {
+        assertEquals(expected.size(), queue.size());
+        int[] records = queue.getRecords();
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), queue.get(i));
+            assertEquals(i, queue.indexOf(expected.get(i)));
+            assertEquals(expected.get(i).getRecord(), records[i]);
+        }
+        assertEquals(expected, queue.getSongs());
+        assertEquals(expected.isEmpty(), queue.isEmpty());
+    }
+
+    private Song song() {
+        int i = songs.size();
+        Song song = new Song("uuid-" + i, "Title " + i, "Album", "Artist", "2000", "0:03:30", 210_000,
+                "/music/" + i + ".mp3", 3_360_000, 8038, 26.12f);
+        songs.add(song);
+        return song;
+    }
+}